@@ -0,0 +1,353 @@
+import java.io.File;
+import java.io.IOException;
+/**
+ * A class that breaks the agreement errors of a generation file down, in one pass and in bounded memory.
+ * checkAgreement only tells whether all agreement in a sentence is correct; this class tells which dependency failed:
+ *
+ *  LOCAL_ANIMACY         a relative pronoun (RA/RB) does not agree in animacy with the noun in front of it
+ *  LOCAL_NUMBER          a verb in a relative clause does not agree in number with the noun in front of it
+ *  LONG_DISTANCE_NUMBER  the final verb (after Z) does not agree in number with the subject
+ *
+ * and how the accuracy depends on the number of relative clauses, on the token distance between the number of the subject and
+ * the number of the final verb, and on the number of attractors: nouns between the two whose animacy (A/B) or number (S/T) differs
+ * from the subject's. Animacy and number attractors are also counted on their own, so a noun that differs in both features counts
+ * once in each of those histograms and once among all attractors.
+ * For every bucket it counts the sentences, the correct sentences and the sentences with a correct final verb.
+ *
+ * Only sentences with correct word order are broken down; their dependencies are read off the BNFAutomaton in one left-to-right
+ * pass over the bytes of the line. The histograms are arrays of longs sized by the bounds of the grammar, so memory does not grow
+ * with the file. Analytics of several files (or shards of one file) can be added up.
+ *
+ * @author Tisha Anders
+ */
+public class AgreementAnalytics
+{
+    // kinds of dependencies
+    public static final int LOCAL_ANIMACY = 0;
+    public static final int LOCAL_NUMBER = 1;
+    public static final int LONG_DISTANCE_NUMBER = 2;
+    static final String[] KIND_NAMES = {"local animacy", "local number", "long-distance number"};
+
+    /**
+     * The sentences, correct sentences and sentences with a correct final verb in every bucket of one quantity.
+     */
+    public static class Histogram
+    {
+        public final long[] sentences;
+        public final long[] good;
+        public final long[] good_final_verb;
+
+        Histogram(int no_of_buckets)
+        {
+            sentences = new long[no_of_buckets];
+            good = new long[no_of_buckets];
+            good_final_verb = new long[no_of_buckets];
+        }
+
+        void add(int bucket, boolean all_correct, boolean final_verb_correct)
+        {
+            bucket = Math.min(bucket, sentences.length - 1);
+            sentences[bucket]++;
+            if (all_correct)
+            {
+                good[bucket]++;
+            }
+            if (final_verb_correct)
+            {
+                good_final_verb[bucket]++;
+            }
+        }
+
+        void add(Histogram other)
+        {
+            for (int i = 0; i < sentences.length; i++)
+            {
+                sentences[i] += other.sentences[i];
+                good[i] += other.good[i];
+                good_final_verb[i] += other.good_final_verb[i];
+            }
+        }
+    }
+
+    final BNFAutomaton automaton;
+    public long no_of_lines;
+    public long no_of_good_order;
+    public long no_of_good;
+    // lines with lowercase rule symbols, which are judged by the reference parsers and not broken down
+    public long no_of_undecided;
+    // per kind: dependencies checked, dependencies that failed, sentences with at least one failure
+    public final long[] dependencies = new long[3];
+    public final long[] failures = new long[3];
+    public final long[] failing_sentences = new long[3];
+    public final Histogram by_clauses;
+    public final Histogram by_distance;
+    public final Histogram by_attractors;
+    public final Histogram by_animacy_attractors;
+    public final Histogram by_number_attractors;
+
+    /**
+     * This constructor analyses sentences of the default grammar.
+     */
+    public AgreementAnalytics()
+    {
+        this(Grammar.DEFAULT);
+    }
+
+    /**
+     * @param grammar the grammar of the sentences
+     */
+    public AgreementAnalytics(Grammar grammar)
+    {
+        automaton = grammar.automaton();
+        by_clauses = new Histogram(grammar.max_clauses + 1);
+        by_distance = new Histogram(grammar.maxSentenceLength() + 1);
+        by_attractors = new Histogram(grammar.max_clauses + 1);
+        by_animacy_attractors = new Histogram(grammar.max_clauses + 1);
+        by_number_attractors = new Histogram(grammar.max_clauses + 1);
+    }
+
+    /**
+     * This method analyses one sentence.
+     * @param buf the bytes of the sentence
+     * @param from index of the first byte
+     * @param to index after the last byte
+     */
+    public void sentence(byte[] buf, int from, int to)
+    {
+        no_of_lines++;
+        int[] next = automaton.next;
+        byte[] role = automaton.role;
+        int state = BNFAutomaton.START;
+        int noun_a = 0;
+        int noun_s = 0;
+        int subject_a = 0;
+        int subject_s = 0;
+        int subject_pos = 0;
+        int final_verb_pos = 0;
+        int no_of_clauses = 0;
+        int no_of_attractors = 0;
+        int no_of_animacy_attractors = 0;
+        int no_of_number_attractors = 0;
+        boolean final_verb_seen = false;
+        int failed = 0; // bit per kind
+        int local_animacy = 0;
+        int local_number = 0;
+        int local_animacy_failures = 0;
+        int local_number_failures = 0;
+        for (int i = from; i < to; i++)
+        {
+            int sym = BNFAutomaton.SYMBOL[buf[i] & 0xFF];
+            state = next[(state << BNFAutomaton.SHIFT) | sym];
+            switch (role[state])
+            {
+                case BNFAutomaton.NO_ROLE:
+                    if (sym == BNFAutomaton.C)
+                    {
+                        no_of_clauses++;
+                    }
+                    break;
+                case BNFAutomaton.NOUN_ANIMACY:
+                    noun_a = sym;
+                    break;
+                case BNFAutomaton.NOUN_NUMBER:
+                    noun_s = sym;
+                    if (!final_verb_seen && (noun_a != subject_a || sym != subject_s))
+                    {
+                        no_of_attractors++;
+                        if (noun_a != subject_a)
+                        {
+                            no_of_animacy_attractors++;
+                        }
+                        if (sym != subject_s)
+                        {
+                            no_of_number_attractors++;
+                        }
+                    }
+                    break;
+                case BNFAutomaton.SUBJECT_NUMBER:
+                    noun_s = sym;
+                    subject_a = noun_a;
+                    subject_s = sym;
+                    subject_pos = i;
+                    break;
+                case BNFAutomaton.PRONOUN_ANIMACY:
+                    local_animacy++;
+                    if (sym != noun_a)
+                    {
+                        local_animacy_failures++;
+                        failed |= 1 << LOCAL_ANIMACY;
+                    }
+                    break;
+                case BNFAutomaton.VERB_NUMBER:
+                    local_number++;
+                    if (sym != noun_s)
+                    {
+                        local_number_failures++;
+                        failed |= 1 << LOCAL_NUMBER;
+                    }
+                    break;
+                default:
+                    final_verb_seen = true;
+                    final_verb_pos = i;
+                    if (sym != subject_s)
+                    {
+                        failed |= 1 << LONG_DISTANCE_NUMBER;
+                    }
+                    break;
+            }
+        }
+        int verdict = automaton.verdict[state];
+        if (verdict == BNFAutomaton.UNDECIDED)
+        {
+            no_of_undecided++;
+            int judgement = AgreementandBNFParser.fastJudgement(new String(buf, from, to - from, java.nio.charset.Charset.defaultCharset()));
+            if (judgement != BNFAutomaton.BAD_WORD_ORDER)
+            {
+                no_of_good_order++;
+                if (judgement == BNFAutomaton.GOOD)
+                {
+                    no_of_good++;
+                }
+            }
+            return;
+        }
+        if (verdict != BNFAutomaton.ACCEPT)
+        {
+            return;
+        }
+        no_of_good_order++;
+        dependencies[LOCAL_ANIMACY] += local_animacy;
+        dependencies[LOCAL_NUMBER] += local_number;
+        dependencies[LONG_DISTANCE_NUMBER]++;
+        failures[LOCAL_ANIMACY] += local_animacy_failures;
+        failures[LOCAL_NUMBER] += local_number_failures;
+        for (int kind = 0; kind < 3; kind++)
+        {
+            if ((failed & (1 << kind)) != 0)
+            {
+                failing_sentences[kind]++;
+            }
+        }
+        if ((failed & (1 << LONG_DISTANCE_NUMBER)) != 0)
+        {
+            failures[LONG_DISTANCE_NUMBER]++;
+        }
+        boolean all_correct = failed == 0;
+        boolean final_verb_correct = (failed & (1 << LONG_DISTANCE_NUMBER)) == 0;
+        if (all_correct)
+        {
+            no_of_good++;
+        }
+        by_clauses.add(no_of_clauses, all_correct, final_verb_correct);
+        by_distance.add(final_verb_pos - subject_pos, all_correct, final_verb_correct);
+        by_attractors.add(no_of_attractors, all_correct, final_verb_correct);
+        by_animacy_attractors.add(no_of_animacy_attractors, all_correct, final_verb_correct);
+        by_number_attractors.add(no_of_number_attractors, all_correct, final_verb_correct);
+    }
+
+    /**
+     * This method adds the counts of another analysis (e.g. of another shard) to this one.
+     * @param other an analysis of sentences of the same grammar
+     */
+    public void add(AgreementAnalytics other)
+    {
+        no_of_lines += other.no_of_lines;
+        no_of_good_order += other.no_of_good_order;
+        no_of_good += other.no_of_good;
+        no_of_undecided += other.no_of_undecided;
+        for (int kind = 0; kind < 3; kind++)
+        {
+            dependencies[kind] += other.dependencies[kind];
+            failures[kind] += other.failures[kind];
+            failing_sentences[kind] += other.failing_sentences[kind];
+        }
+        by_clauses.add(other.by_clauses);
+        by_distance.add(other.by_distance);
+        by_attractors.add(other.by_attractors);
+        by_animacy_attractors.add(other.by_animacy_attractors);
+        by_number_attractors.add(other.by_number_attractors);
+    }
+
+    /**
+     * This method analyses every line of a file of the default grammar.
+     */
+    public static AgreementAnalytics analyse(File file) throws IOException
+    {
+        return analyse(file, Grammar.DEFAULT);
+    }
+
+    /**
+     * This method analyses every line of a file, which may be gzip-compressed.
+     * Like the file evaluators, it crops the last character of every line first.
+     * @param file the file to be examined
+     * @param grammar the grammar of the sentences
+     * @return the analysis
+     */
+    public static AgreementAnalytics analyse(File file, Grammar grammar) throws IOException
+    {
+        final AgreementAnalytics analytics = new AgreementAnalytics(grammar);
+        FileScorer.forEachLine(file, (buf, from, to, offset) -> analytics.sentence(buf, from, FileScorer.cropLastCharacter(buf, from, to)));
+        return analytics;
+    }
+
+    static String percentage(long part, long whole)
+    {
+        return whole == 0 ? "-" : String.format(java.util.Locale.ROOT, "%.2f%%", part * Math.pow(whole, -1) * 100);
+    }
+
+    static void table(StringBuilder sb, String title, Histogram histogram)
+    {
+        sb.append(title).append(": sentences, correct, final verb correct").append(System.lineSeparator());
+        for (int i = 0; i < histogram.sentences.length; i++)
+        {
+            if (histogram.sentences[i] > 0)
+            {
+                sb.append(String.format("  %4d  %10d  %8s  %8s", i, histogram.sentences[i],
+                        percentage(histogram.good[i], histogram.sentences[i]),
+                        percentage(histogram.good_final_verb[i], histogram.sentences[i]))).append(System.lineSeparator());
+            }
+        }
+    }
+
+    /**
+     * This method describes the analysis as a readable report.
+     * @return the report, with one table per quantity
+     */
+    public String report()
+    {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        sb.append("lines ").append(no_of_lines).append(", word order ").append(percentage(no_of_good_order, no_of_lines))
+            .append(", word order & agreement ").append(percentage(no_of_good, no_of_lines));
+        if (no_of_undecided > 0)
+        {
+            sb.append(", not broken down (rule symbols) ").append(no_of_undecided);
+        }
+        sb.append(nl);
+        for (int kind = 0; kind < 3; kind++)
+        {
+            sb.append(KIND_NAMES[kind]).append(": ").append(failures[kind]).append(" of ").append(dependencies[kind])
+                .append(" dependencies wrong (").append(percentage(failures[kind], dependencies[kind])).append("), in ")
+                .append(failing_sentences[kind]).append(" sentences").append(nl);
+        }
+        table(sb, "by relative clauses", by_clauses);
+        table(sb, "by distance subject - final verb", by_distance);
+        table(sb, "by attractors", by_attractors);
+        table(sb, "by animacy attractors", by_animacy_attractors);
+        table(sb, "by number attractors", by_number_attractors);
+        return sb.toString();
+    }
+
+    /**
+     * This method prints the analysis of every file given on the command line.
+     * @param args the files to be examined
+     */
+    public static void main(String[] args) throws IOException
+    {
+        for (String filename : args)
+        {
+            System.out.println(filename);
+            System.out.print(analyse(new File(filename)).report());
+        }
+    }
+}
@@ -103,64 +103,84 @@ public class AgreementandBNFParser
     }
 
     /**
-     * This function takes in a file and tests whether the order of tokens is possible, using the above created BNF parser
+     * This function tests word order and agreement of a string together, in one pass through the compiled BNFAutomaton.
+     * It gives the same result as BNFParser.BNFparse and checkAgreement combined, without creating any intermediate strings.
+     * Strings containing lowercase rule symbols are handed over to those two methods.
+     * @param s The string to be tested
+     * @return BNFAutomaton.GOOD (2) if word order & agreement are correct, BNFAutomaton.BAD_AGREEMENT (1) if only the word order is correct, 
+     * BNFAutomaton.BAD_WORD_ORDER (0) otherwise
+     */
+    public static int fastJudgement(CharSequence s)
+    {
+        int judgement = BNFAutomaton.judge(s);
+        if (judgement == BNFAutomaton.UNDECIDED)
+        {
+            String str = s.toString();
+            if (BNFParser.BNFparse(str) == 0)
+            {
+                return BNFAutomaton.BAD_WORD_ORDER;
+            }
+            try
+            {
+                return BNFAutomaton.BAD_AGREEMENT + checkAgreement(str);
+            }
+            catch (IndexOutOfBoundsException e)
+            {
+                return BNFAutomaton.BAD_AGREEMENT; // too few endings left to check
+            }
+        }
+        return judgement;
+    }
+
+    /**
+     * This function takes in a file and tests whether the order of tokens is possible, using the above created BNF parser.
+     * The file is scored at the byte level by the FileScorer.
      * @param filename The file to be examined
      * @return percentage of sentences with correct word order
      * 
      */ 
     public static double testBNFFromFile(String filename) throws java.io.FileNotFoundException
     {
-        Scanner scanner = new Scanner(new File(filename + ".txt"));
-        int no_of_good_gens = 0;
-        int no_of_tested_gens = 0;
-        int[] results = new int[10000];
-        int line_no = 0;
-        while (scanner.hasNextLine())
-        {
-            String line = scanner.nextLine();
-            line = line.substring(0, line.length()-1);
-            int judgement = BNFParser.BNFparse(line);
-            results[line_no] = judgement;
-            no_of_good_gens = no_of_good_gens + judgement; 
-            line_no++;
-            no_of_tested_gens++;
-        }
-        double percentage = no_of_good_gens * Math.pow(no_of_tested_gens, -1);
-        return percentage*100;
+        return FileScorer.scoreTxt(filename).wordOrderPercentage();
     }
 
     /**
-     * This function takes in a file and tests whether the sentences are possible (word-order & agreement)
+     * This function takes in a file and tests whether the sentences are possible (word-order & agreement).
+     * The file is scored at the byte level by the FileScorer.
      * @param filename The file to be examined
      * @return percentage of correct sentences
      * 
      */ 
     public static double testFromFile(String filename) throws java.io.FileNotFoundException
     {
-        Scanner scanner = new Scanner(new File(filename + ".txt"));
-        int no_of_good_gens = 0;
-        int no_of_tested_gens = 0;
-        int[] results = new int[10000];
-        int line_no = 0;
-        while (scanner.hasNextLine())
-        {
-            String line = scanner.nextLine();
-            line = line.substring(0, line.length()-1);
-            int bnf_judgement = BNFParser.BNFparse(line);
-            int agr_judgement = checkAgreement(line);
-            results[line_no] = (bnf_judgement + agr_judgement)/2;
-            if (bnf_judgement + agr_judgement == 2)
-            {
-                no_of_good_gens++;
-            }
-            line_no++;
-            no_of_tested_gens++;
-        }
-
-        double percentage = no_of_good_gens * Math.pow(no_of_tested_gens, -1);
-        return percentage*100;
+        return FileScorer.scoreTxt(filename).percentage();
     } 
 
+    /**
+     * This function takes in a file and tests whether the sentences are possible (word-order & agreement), using several threads.
+     * The file is cut into chunks which are scored in parallel; the result is the same as that of testFromFile(filename).
+     * @param filename The file to be examined
+     * @param no_of_threads The number of threads to use
+     * @return percentage of correct sentences
+     * 
+     */ 
+    public static double testFromFile(String filename, int no_of_threads) throws java.io.FileNotFoundException
+    {
+        File file = FileScorer.txtFile(filename);
+        try
+        {
+            return FileScorer.scoreParallel(file, no_of_threads).tally.percentage();
+        }
+        catch (java.io.FileNotFoundException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
     /**
      * This method lists all generated sentences from a file together with their judgement (word-order & agreement).
      * judgementArray might be useful in analysing what the LSTM struggles with in particular.
@@ -170,84 +190,90 @@ public class AgreementandBNFParser
      */ 
     public static String[][] judgementArray(String filename) throws java.io.FileNotFoundException
     {
-        Scanner scanner_count = new Scanner(new File(filename + ".txt"));
-        int no_of_good_gens = 0;
-        int no_of_tested_gens = 0;
-        int line_cnt = 0;
-        while (scanner_count.hasNextLine())
-        {
-            line_cnt++;
-            scanner_count.nextLine();
-        }
-        scanner_count.close();
-        Scanner scanner = new Scanner(new File(filename + ".txt"));
-        String[][] judgements = new String[2][line_cnt];
-        int line_no = 0;
-        while (scanner.hasNextLine())
-        {
-            String line = scanner.nextLine();
-            judgements[0][line_no] = line;
-            line = line.substring(0, line.length()-1);
-            int bnf_judgement = BNFParser.BNFparse(line);
-            int agr_judgement = checkAgreement(line);
-            if (bnf_judgement + agr_judgement ==2)
-            {
-                judgements[1][line_no] = "Good";
-            }
-            else
-            {
-                judgements[1][line_no] = "Bad";
-            }
-            line_no++;
-            no_of_tested_gens++;
+        final List<String> lines = new ArrayList<String>();
+        final List<String> verdicts = new ArrayList<String>();
+        try
+        {
+            FileScorer.forEachLine(FileScorer.txtFile(filename), Metrics.SCORING, (buf, from, to, offset) -> {
+                    lines.add(new String(buf, from, to - from, java.nio.charset.Charset.defaultCharset()));
+                    if (FileScorer.judgeLine(buf, from, to, Metrics.SCORING) == BNFAutomaton.GOOD)
+                    {
+                        verdicts.add("Good");
+                    }
+                    else
+                    {
+                        verdicts.add("Bad");
+                    }
+                });
+        }
+        catch (java.io.FileNotFoundException e)
+        {
+            throw e;
         }
-        scanner.close();
+        catch (IOException e)
+        {
+            throw new java.io.UncheckedIOException(e);
+        }
+        String[][] judgements = new String[2][lines.size()];
+        lines.toArray(judgements[0]);
+        verdicts.toArray(judgements[1]);
         return judgements;
     }
 
     /**
      * This method lists all bad sentences from a file.
      * badGenerations might be useful in analysing what the LSTM struggles with in particular.
-     * @param filename The file to be examined
-     * @return judgement array (sentence in first column, judgement in second column)
+     * The judgements are kept in a VerdictStore and the bad lines are copied from the source file without decoding them, 
+     * so that this works for files of any size.
+     * @param source_file The file to be examined, excluding .txt
+     * @param goal_file The file to write the bad sentences to, excluding BAD and .txt
+     * @return number of bad sentences
      * 
      */ 
 
     public static int badSentencesToFile(String source_file, String goal_file) throws java.io.FileNotFoundException
     {
-        String[][] all_judgements = judgementArray(source_file);
-        int bad_count = 0;
-        File myFile = new File("BAD" + goal_file + ".txt");
-        PrintStream p = new PrintStream(myFile);
-        for (int i = 0; i < all_judgements[1].length; i++)
-        {
-            String current_sentence = all_judgements[1][i];
-            if (current_sentence.equals("Bad"))
-            {
-                p.println(all_judgements[0][i]);
-                bad_count++;
-            }
+        try
+        {
+            VerdictStore store = VerdictStore.judge(FileScorer.txtFile(source_file), false);
+            return (int) store.badLinesToFile(new File("BAD" + goal_file + ".txt"));
+        }
+        catch (java.io.FileNotFoundException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            throw new java.io.UncheckedIOException(e);
         }
-
-        p.close();
-        return bad_count;
     }
 
+    /**
+     * This method lists all bad sentences from a file.
+     * @param filename The file to be examined, excluding .txt
+     * @return all bad sentences, in file order
+     * 
+     */ 
     public static String[] badSentences(String filename) throws java.io.FileNotFoundException
     {
-        String[][] all_judgements = judgementArray(filename);
-        String[] bad_sentences = new String[500];
-        int bad_count = 0;
-        for (int i = 0; i < all_judgements.length; i++)
+        try
         {
-            String current_sentence = all_judgements[1][i];
-            if (current_sentence.equals("Bad"))
-            {
-                bad_sentences[bad_count] = all_judgements[0][i];
-                bad_count++;
-            }
+            VerdictStore store = VerdictStore.judge(FileScorer.txtFile(filename), false);
+            final String[] bad_sentences = new String[(int) store.countBad(0, store.size())];
+            final int[] bad_count = {0};
+            store.forEachBadLine((buf, from, to, offset) -> {
+                    bad_sentences[bad_count[0]++] = new String(buf, from, to - from, java.nio.charset.Charset.defaultCharset());
+                });
+            return bad_sentences;
+        }
+        catch (java.io.FileNotFoundException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            throw new java.io.UncheckedIOException(e);
         }
-        return bad_sentences;
     }
 
 }
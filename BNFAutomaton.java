@@ -0,0 +1,590 @@
+/**
+ * A class that compiles the BNF of a Grammar once into a table-driven finite automaton.
+ * Since the grammar is bounded (by default at most 9 Ns, 5 Vs, 3 Ds, 2 Ps and 4 relative clauses), its language is regular, so a string
+ * can be accepted or rejected in one left-to-right pass without rewriting it.
+ * The static methods use the automaton of Grammar.DEFAULT; the automaton of any other grammar is given by Grammar.automaton().
+ * Every state has one row in a transition table, with one column per token:
+ *
+ *  C R A B S T N V D P Z  (the order used by all token masks)
+ *
+ * plus a column for any other character and a column for the lowercase rule symbols (s, u, x, q, y, c, d, p, n, g, v, z, r).
+ * BNFparse treats these as units that have already been reduced, so a string containing them cannot be judged by the automaton and
+ * is reported as UNDECIDED. Scanning never allocates.
+ * 
+ * The states that read an agreement feature are annotated with a role, so that judge can check agreement during the same pass:
+ * every relative pronoun has to agree in animacy (A/B) and every verb in number (S/T) with the noun in front of it, 
+ * and the final verb has to agree in number with the subject.
+ *
+ * @author Tisha Anders
+ */
+public class BNFAutomaton
+{
+    // token indices, used as columns of the transition table
+    public static final int C = 0;
+    public static final int R = 1;
+    public static final int A = 2;
+    public static final int B = 3;
+    public static final int S = 4;
+    public static final int T = 5;
+    public static final int N = 6;
+    public static final int V = 7;
+    public static final int D = 8;
+    public static final int P = 9;
+    public static final int Z = 10;
+    public static final int NO_OF_TOKENS = 11;
+    static final int FOREIGN = 11;
+    static final int RULE_SYMBOL = 12;
+    static final int WIDTH = 16;
+    static final int SHIFT = 4;
+
+    // the letter of every token index
+    public static final String TOKENS = "CRABSTNVDPZ";
+
+    // verdicts
+    public static final int REJECT = 0;
+    public static final int ACCEPT = 1;
+    public static final int UNDECIDED = -1;
+
+    // judgements, i.e. the sum of the word-order and the agreement judgement of AgreementandBNFParser
+    public static final int BAD_WORD_ORDER = 0;
+    public static final int BAD_AGREEMENT = 1;
+    public static final int GOOD = 2;
+
+    // roles of the states that read an agreement feature
+    static final byte NO_ROLE = 0;
+    static final byte NOUN_ANIMACY = 1;
+    static final byte NOUN_NUMBER = 2;
+    static final byte SUBJECT_NUMBER = 3;
+    static final byte PRONOUN_ANIMACY = 4;
+    static final byte VERB_NUMBER = 5;
+    static final byte FINAL_VERB_NUMBER = 6;
+
+    // fixed states
+    static final int DEAD = 0;
+    static final int RULE_SEEN = 1;
+    static final int START = 2;
+
+    // clause number of the states in the outro
+    static final byte OUTRO = Byte.MAX_VALUE;
+
+    // column of every byte / char below 256
+    static final byte[] SYMBOL = new byte[256];
+
+    static
+    {
+        java.util.Arrays.fill(SYMBOL, (byte) FOREIGN);
+        for (int i = 0; i < NO_OF_TOKENS; i++)
+        {
+            SYMBOL[TOKENS.charAt(i)] = (byte) i;
+        }
+        String rule_symbols = "suxqycdpngvzr";
+        for (int i = 0; i < rule_symbols.length(); i++)
+        {
+            SYMBOL[rule_symbols.charAt(i)] = (byte) RULE_SYMBOL;
+        }
+    }
+
+    // the automaton of Grammar.DEFAULT, used by the static methods
+    public static final BNFAutomaton DEFAULT = new BNFAutomaton(Grammar.DEFAULT);
+
+    final Grammar grammar;
+    // compiled tables
+    final int[] next;
+    final byte[] verdict;
+    final byte[] role;
+    // the number of the relative clause every state belongs to: 0 in the intro, 1 to max_clauses in the clauses, OUTRO in the outro
+    final byte[] clause;
+    final int no_of_states;
+    // the tokens allowed in every state by word order alone (bit END: the sentence may end), and the role of the state the feature tokens lead to
+    final int[] allowed;
+    final byte[] constraint;
+
+    /**
+     * This constructor compiles the automaton of a grammar. Use Grammar.automaton(), which compiles every grammar only once.
+     * @param grammar the bounds of the grammar
+     */
+    BNFAutomaton(Grammar grammar)
+    {
+        this.grammar = grammar;
+        Compiler compiler = new Compiler(grammar);
+        compiler.compile();
+        no_of_states = compiler.no_of_states;
+        next = java.util.Arrays.copyOf(compiler.next, no_of_states << SHIFT);
+        verdict = java.util.Arrays.copyOf(compiler.verdict, no_of_states);
+        role = java.util.Arrays.copyOf(compiler.role, no_of_states);
+        clause = java.util.Arrays.copyOf(compiler.clause, no_of_states);
+
+        allowed = new int[no_of_states];
+        constraint = new byte[no_of_states];
+        for (int state = 0; state < no_of_states; state++)
+        {
+            int mask = 0;
+            for (int sym = 0; sym < NO_OF_TOKENS; sym++)
+            {
+                int to = next[(state << SHIFT) | sym];
+                if (to != DEAD && to != RULE_SEEN)
+                {
+                    mask |= 1 << sym;
+                    if (role[to] == PRONOUN_ANIMACY || role[to] == VERB_NUMBER || role[to] == FINAL_VERB_NUMBER)
+                    {
+                        constraint[state] = role[to];
+                    }
+                }
+            }
+            if (verdict[state] == ACCEPT)
+            {
+                mask |= 1 << PrefixValidator.END;
+            }
+            allowed[state] = mask;
+        }
+    }
+
+    /**
+     * @return the grammar this automaton was compiled from
+     */
+    public Grammar grammar()
+    {
+        return grammar;
+    }
+
+    /**
+     * This method returns the column of a character in the transition table.
+     * @param c the character
+     * @return its token index, FOREIGN or RULE_SYMBOL
+     */
+    static int symbol(int c)
+    {
+        return c < 256 ? SYMBOL[c] : FOREIGN;
+    }
+
+    /**
+     * This method tests the word order of a string against the default grammar.
+     * @param s the string to be checked
+     * @return ACCEPT, REJECT or UNDECIDED (the string contains lowercase rule symbols)
+     */
+    public static int parse(CharSequence s)
+    {
+        return DEFAULT.wordOrder(s, 0, s.length());
+    }
+
+    /**
+     * This method tests the word order of a range of a CharSequence against the default grammar.
+     * @param s the characters
+     * @param from index of the first character
+     * @param to index after the last character
+     * @return ACCEPT, REJECT or UNDECIDED
+     */
+    public static int parse(CharSequence s, int from, int to)
+    {
+        return DEFAULT.wordOrder(s, from, to);
+    }
+
+    /**
+     * This method tests the word order of a range of a char array against the default grammar.
+     * @param s the characters
+     * @param from index of the first character
+     * @param to index after the last character
+     * @return ACCEPT, REJECT or UNDECIDED
+     */
+    public static int parse(char[] s, int from, int to)
+    {
+        return DEFAULT.wordOrder(s, from, to);
+    }
+
+    /**
+     * This method tests the word order of a range of ASCII bytes against the default grammar.
+     * @param s the bytes
+     * @param from index of the first byte
+     * @param to index after the last byte
+     * @return ACCEPT, REJECT or UNDECIDED
+     */
+    public static int parse(byte[] s, int from, int to)
+    {
+        return DEFAULT.wordOrder(s, from, to);
+    }
+
+    /**
+     * This method tests word order and agreement of a string against the default grammar in one pass.
+     * @param s the string to be checked
+     * @return GOOD, BAD_AGREEMENT, BAD_WORD_ORDER or UNDECIDED (the string contains lowercase rule symbols)
+     */
+    public static int judge(CharSequence s)
+    {
+        return DEFAULT.wordOrderAndAgreement(s, 0, s.length());
+    }
+
+    /**
+     * This method tests word order and agreement of a range of a CharSequence against the default grammar in one pass.
+     * @param s the characters
+     * @param from index of the first character
+     * @param to index after the last character
+     * @return GOOD, BAD_AGREEMENT, BAD_WORD_ORDER or UNDECIDED
+     */
+    public static int judge(CharSequence s, int from, int to)
+    {
+        return DEFAULT.wordOrderAndAgreement(s, from, to);
+    }
+
+    /**
+     * This method tests word order and agreement of a range of a char array against the default grammar in one pass.
+     * @param s the characters
+     * @param from index of the first character
+     * @param to index after the last character
+     * @return GOOD, BAD_AGREEMENT, BAD_WORD_ORDER or UNDECIDED
+     */
+    public static int judge(char[] s, int from, int to)
+    {
+        return DEFAULT.wordOrderAndAgreement(s, from, to);
+    }
+
+    /**
+     * This method tests word order and agreement of a range of ASCII bytes against the default grammar in one pass.
+     * @param s the bytes
+     * @param from index of the first byte
+     * @param to index after the last byte
+     * @return GOOD, BAD_AGREEMENT, BAD_WORD_ORDER or UNDECIDED
+     */
+    public static int judge(byte[] s, int from, int to)
+    {
+        return DEFAULT.wordOrderAndAgreement(s, from, to);
+    }
+
+    /**
+     * This method tests the word order of a range of a CharSequence against the grammar of this automaton.
+     * @param s the characters
+     * @param from index of the first character
+     * @param to index after the last character
+     * @return ACCEPT, REJECT or UNDECIDED
+     */
+    public int wordOrder(CharSequence s, int from, int to)
+    {
+        int[] next = this.next;
+        int state = START;
+        for (int i = from; i < to; i++)
+        {
+            state = next[(state << SHIFT) | symbol(s.charAt(i))];
+        }
+        return verdict[state];
+    }
+
+    /**
+     * This method tests the word order of a range of a char array against the grammar of this automaton.
+     * @param s the characters
+     * @param from index of the first character
+     * @param to index after the last character
+     * @return ACCEPT, REJECT or UNDECIDED
+     */
+    public int wordOrder(char[] s, int from, int to)
+    {
+        int[] next = this.next;
+        int state = START;
+        for (int i = from; i < to; i++)
+        {
+            state = next[(state << SHIFT) | symbol(s[i])];
+        }
+        return verdict[state];
+    }
+
+    /**
+     * This method tests the word order of a range of ASCII bytes against the grammar of this automaton.
+     * @param s the bytes
+     * @param from index of the first byte
+     * @param to index after the last byte
+     * @return ACCEPT, REJECT or UNDECIDED
+     */
+    public int wordOrder(byte[] s, int from, int to)
+    {
+        int[] next = this.next;
+        int state = START;
+        for (int i = from; i < to; i++)
+        {
+            state = next[(state << SHIFT) | SYMBOL[s[i] & 0xFF]];
+        }
+        return verdict[state];
+    }
+
+    /**
+     * This method tests word order and agreement of a range of a CharSequence against the grammar of this automaton in one pass.
+     * @param s the characters
+     * @param from index of the first character
+     * @param to index after the last character
+     * @return GOOD, BAD_AGREEMENT, BAD_WORD_ORDER or UNDECIDED
+     */
+    public int wordOrderAndAgreement(CharSequence s, int from, int to)
+    {
+        int[] next = this.next;
+        byte[] role = this.role;
+        int state = START;
+        int noun_a = 0;
+        int noun_s = 0;
+        int subject_s = 0;
+        boolean agreement = true;
+        for (int i = from; i < to; i++)
+        {
+            int sym = symbol(s.charAt(i));
+            state = next[(state << SHIFT) | sym];
+            switch (role[state])
+            {
+                case NO_ROLE: break;
+                case NOUN_ANIMACY: noun_a = sym; break;
+                case NOUN_NUMBER: noun_s = sym; break;
+                case SUBJECT_NUMBER: noun_s = sym; subject_s = sym; break;
+                case PRONOUN_ANIMACY: agreement &= sym == noun_a; break;
+                case VERB_NUMBER: agreement &= sym == noun_s; break;
+                default: agreement &= sym == subject_s; break;
+            }
+        }
+        return judgement(state, agreement);
+    }
+
+    /**
+     * This method tests word order and agreement of a range of a char array against the grammar of this automaton in one pass.
+     * @param s the characters
+     * @param from index of the first character
+     * @param to index after the last character
+     * @return GOOD, BAD_AGREEMENT, BAD_WORD_ORDER or UNDECIDED
+     */
+    public int wordOrderAndAgreement(char[] s, int from, int to)
+    {
+        int[] next = this.next;
+        byte[] role = this.role;
+        int state = START;
+        int noun_a = 0;
+        int noun_s = 0;
+        int subject_s = 0;
+        boolean agreement = true;
+        for (int i = from; i < to; i++)
+        {
+            int sym = symbol(s[i]);
+            state = next[(state << SHIFT) | sym];
+            switch (role[state])
+            {
+                case NO_ROLE: break;
+                case NOUN_ANIMACY: noun_a = sym; break;
+                case NOUN_NUMBER: noun_s = sym; break;
+                case SUBJECT_NUMBER: noun_s = sym; subject_s = sym; break;
+                case PRONOUN_ANIMACY: agreement &= sym == noun_a; break;
+                case VERB_NUMBER: agreement &= sym == noun_s; break;
+                default: agreement &= sym == subject_s; break;
+            }
+        }
+        return judgement(state, agreement);
+    }
+
+    /**
+     * This method tests word order and agreement of a range of ASCII bytes against the grammar of this automaton in one pass.
+     * @param s the bytes
+     * @param from index of the first byte
+     * @param to index after the last byte
+     * @return GOOD, BAD_AGREEMENT, BAD_WORD_ORDER or UNDECIDED
+     */
+    public int wordOrderAndAgreement(byte[] s, int from, int to)
+    {
+        int[] next = this.next;
+        byte[] role = this.role;
+        int state = START;
+        int noun_a = 0;
+        int noun_s = 0;
+        int subject_s = 0;
+        boolean agreement = true;
+        for (int i = from; i < to; i++)
+        {
+            int sym = SYMBOL[s[i] & 0xFF];
+            state = next[(state << SHIFT) | sym];
+            switch (role[state])
+            {
+                case NO_ROLE: break;
+                case NOUN_ANIMACY: noun_a = sym; break;
+                case NOUN_NUMBER: noun_s = sym; break;
+                case SUBJECT_NUMBER: noun_s = sym; subject_s = sym; break;
+                case PRONOUN_ANIMACY: agreement &= sym == noun_a; break;
+                case VERB_NUMBER: agreement &= sym == noun_s; break;
+                default: agreement &= sym == subject_s; break;
+            }
+        }
+        return judgement(state, agreement);
+    }
+
+    int judgement(int state, boolean agreement)
+    {
+        int v = verdict[state];
+        if (v != ACCEPT)
+        {
+            return v == REJECT ? BAD_WORD_ORDER : UNDECIDED;
+        }
+        return agreement ? GOOD : BAD_AGREEMENT;
+    }
+
+    /**
+     * This class builds the automaton from the rules of the grammar, one run of equal tokens at a time.
+     * The states that may be followed by the next part of the sentence are kept in a frontier.
+     */
+    static class Compiler
+    {
+        final Grammar grammar;
+        int[] next = new int[256 << SHIFT];
+        byte[] verdict = new byte[256];
+        byte[] role = new byte[256];
+        byte[] clause = new byte[256];
+        byte current_clause = 0;
+        int no_of_states = 0;
+        int[] frontier = new int[0];
+
+        Compiler(Grammar grammar)
+        {
+            this.grammar = grammar;
+        }
+
+        int newState()
+        {
+            if (no_of_states == verdict.length)
+            {
+                next = java.util.Arrays.copyOf(next, next.length * 2);
+                verdict = java.util.Arrays.copyOf(verdict, verdict.length * 2);
+                role = java.util.Arrays.copyOf(role, role.length * 2);
+                clause = java.util.Arrays.copyOf(clause, clause.length * 2);
+            }
+            int state = no_of_states++;
+            verdict[state] = REJECT;
+            role[state] = NO_ROLE;
+            clause[state] = current_clause;
+            for (int sym = 0; sym < WIDTH; sym++)
+            {
+                next[(state << SHIFT) | sym] = sym == RULE_SYMBOL ? RULE_SEEN : DEAD;
+            }
+            return state;
+        }
+
+        void edge(int from, int sym, int to)
+        {
+            if (next[(from << SHIFT) | sym] != DEAD)
+            {
+                throw new IllegalStateException("grammar is not deterministic at token " + TOKENS.charAt(sym));
+            }
+            next[(from << SHIFT) | sym] = to;
+        }
+
+        /**
+         * This method appends a run of min to max copies of one token to every frontier state.
+         */
+        void run(int sym, int min, int max)
+        {
+            if (max == 0)
+            {
+                return;
+            }
+            int[] new_frontier = new int[(min == 0 ? frontier.length : 0) + max - Math.max(min, 1) + 1];
+            int k = 0;
+            if (min == 0)
+            {
+                for (int f : frontier)
+                {
+                    new_frontier[k++] = f;
+                }
+            }
+            int previous = newState();
+            for (int f : frontier)
+            {
+                edge(f, sym, previous);
+            }
+            for (int i = 1; i <= max; i++)
+            {
+                if (i > 1)
+                {
+                    int state = newState();
+                    edge(previous, sym, state);
+                    previous = state;
+                }
+                if (i >= min)
+                {
+                    new_frontier[k++] = previous;
+                }
+            }
+            frontier = new_frontier;
+        }
+
+        /**
+         * This method appends exactly one of two tokens (e.g. A or B) to every frontier state.
+         * The new state reads an agreement feature in the given role.
+         */
+        void either(int sym1, int sym2, byte feature_role)
+        {
+            int state = newState();
+            role[state] = feature_role;
+            for (int f : frontier)
+            {
+                edge(f, sym1, state);
+                edge(f, sym2, state);
+            }
+            frontier = new int[] {state};
+        }
+
+        // n -> N g, g -> A S | A T | B S | B T
+        void noun(boolean subject)
+        {
+            run(N, grammar.min_n, grammar.max_n);
+            either(A, B, NOUN_ANIMACY);
+            either(S, T, subject ? SUBJECT_NUMBER : NOUN_NUMBER);
+        }
+
+        // v -> V S | ... | V V V V V T
+        void verb(byte number_role)
+        {
+            run(V, grammar.min_v, grammar.max_v);
+            either(S, T, number_role);
+        }
+
+        void compile()
+        {
+            int dead = newState();
+            int rule_seen = newState();
+            for (int sym = 0; sym < WIDTH; sym++)
+            {
+                next[(dead << SHIFT) | sym] = sym == RULE_SYMBOL ? RULE_SEEN : DEAD;
+                next[(rule_seen << SHIFT) | sym] = RULE_SEEN;
+            }
+            verdict[rule_seen] = UNDECIDED;
+            frontier = new int[] {newState()};
+
+            // u -> d p n | d n | p n | n
+            run(D, grammar.min_d, grammar.max_d);
+            run(P, grammar.min_p, grammar.max_p);
+            noun(true);
+
+            // x -> q | q q | q q q | q q q q, q -> c r v p n p | c r v p n | c r v n | c r v n p
+            int[] clause_ends = new int[0];
+            for (int k = 1; k <= grammar.max_clauses; k++)
+            {
+                current_clause = (byte) k;
+                run(C, 1, 1);
+                run(R, 1, 1);
+                either(A, B, PRONOUN_ANIMACY);
+                verb(VERB_NUMBER);
+                run(P, grammar.min_p, grammar.max_p);
+                noun(false);
+                run(P, grammar.min_p, grammar.max_p);
+                if (k < grammar.min_clauses)
+                {
+                    continue;
+                }
+                int[] ends = new int[clause_ends.length + frontier.length];
+                System.arraycopy(clause_ends, 0, ends, 0, clause_ends.length);
+                System.arraycopy(frontier, 0, ends, clause_ends.length, frontier.length);
+                clause_ends = ends;
+            }
+
+            // y -> z v d p n | z v d n | z v p n | z v n
+            frontier = clause_ends;
+            current_clause = OUTRO;
+            run(Z, 1, 1);
+            verb(FINAL_VERB_NUMBER);
+            run(D, grammar.min_d, grammar.max_d);
+            run(P, grammar.min_p, grammar.max_p);
+            noun(false);
+            for (int f : frontier)
+            {
+                verdict[f] = ACCEPT;
+            }
+        }
+    }
+}
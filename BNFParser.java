@@ -21,6 +21,8 @@ import java.lang.Math;
  *
  *Agreement has to be checked separately.
  *
+ *These are the rules of Grammar.DEFAULT. The rule matrix is generated from the bounds of a Grammar, so larger grammars can be parsed too.
+ *
  * @author Tisha Anders
 
  */
@@ -36,24 +38,7 @@ public class BNFParser
      */
     public static String[][] parsingmatrix()
     {
-        String[][] parsingmatrix =
-
-            {
-                {"s","uxy"},
-                {"u","dpn","dn","pn","n"},
-                {"x","qqqq","qqq","qq","q"},
-                {"q","crvpnp","crvpn","crvnp","crvn"},
-                {"y","zvdpn","zvdn","zvpn","zvn"},
-                {"c","C"},
-                {"d","DDD","DD","D"},
-                {"p","PP","P"},
-                {"n","NNNNNNNNNg","NNNNNNNNg","NNNNNNNg","NNNNNNg","NNNNNg","NNNNg","NNNg","NNg","Ng"},
-                {"g","AS","AT","BS","BT"},
-                {"v","VVVVVS","VVVVS","VVVS","VVS","VS","VVVVVT","VVVVT","VVVT","VVT","VT"},
-                {"z","Z"},
-                {"r","RA","RB"} };
-
-        return parsingmatrix;
+        return Grammar.DEFAULT.parsingmatrix();
     }
 
     /**
@@ -64,7 +49,20 @@ public class BNFParser
      */
     public static int BNFparse(String s)
     {
-        String[][] rulematrix = parsingmatrix();
+        return BNFparse(s, Grammar.DEFAULT);
+    }
+
+    /**
+     * This function takes in a string and tests its grammaticality with respect to a given grammar.
+     * The rule matrix of the grammar is built only once.
+     * @param s the string to be checked
+     * @param grammar the grammar
+     * @return 1 if the string was correct, 0 otherwise
+     * 
+     */
+    public static int BNFparse(String s, Grammar grammar)
+    {
+        String[][] rulematrix = grammar.rules();
         int no_of_rules = rulematrix.length; 
         for (int r = no_of_rules-1; r >= 0; r--)
         {
@@ -97,27 +95,50 @@ public class BNFParser
     }
 
     /**
-     * This function takes in a file and tests whether the order of tokens is possible, using the above created BNF parser
+     * This function tests the grammaticality of a string like BNFparse, but in one left-to-right pass through the compiled BNFAutomaton, 
+     * without building the rule matrix or rewriting the string.
+     * Strings containing lowercase rule symbols cannot be judged by the automaton and are handed over to BNFparse.
+     * @param s the string to be checked
+     * @return 1 if the string was correct, 0 otherwise
+     * 
+     */
+    public static int fastBNFparse(CharSequence s)
+    {
+        int verdict = BNFAutomaton.parse(s);
+        if (verdict == BNFAutomaton.UNDECIDED)
+        {
+            return BNFparse(s.toString());
+        }
+        return verdict;
+    }
+
+    /**
+     * This function tests the grammaticality of a string with respect to a given grammar, in one pass through the automaton of the grammar.
+     * @param s the string to be checked
+     * @param grammar the grammar
+     * @return 1 if the string was correct, 0 otherwise
+     * 
+     */
+    public static int fastBNFparse(CharSequence s, Grammar grammar)
+    {
+        int verdict = grammar.automaton().wordOrder(s, 0, s.length());
+        if (verdict == BNFAutomaton.UNDECIDED)
+        {
+            return BNFparse(s.toString(), grammar);
+        }
+        return verdict;
+    }
+
+    /**
+     * This function takes in a file and tests whether the order of tokens is possible, using the above created BNF parser.
+     * The file is scored at the byte level by the FileScorer.
      * @param filename The file to be examined
      * @return percentage of correct sentences
      * 
      */
     public static double testFromFile(String filename) throws java.io.FileNotFoundException
     {
-        Scanner scanner = new Scanner(new File(filename + ".txt"));
-        int no_of_good_gens = 0;
-        int no_of_tested_gens = 0;
-        while (scanner.hasNextLine())
-        {
-            no_of_tested_gens++;
-            String line = scanner.nextLine();
-            line = line.substring(0, line.length()-1); //crop out the space symbol
-            int judgement = BNFparse(line);
-            no_of_good_gens = no_of_good_gens + judgement; 
-            
-        }
-        double percentage = no_of_good_gens * Math.pow(no_of_tested_gens, -1);
-        return percentage*100;
+        return FileScorer.scoreTxt(filename).wordOrderPercentage();
     }
     
 }
@@ -0,0 +1,365 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+/**
+ * A class that scores many generation files at once, e.g. one file per training checkpoint, and writes one table with a row per file:
+ *
+ *  file, sentences, good word order, good, bad word order, bad agreement, bad, word order percentage, percentage, bytes, milliseconds
+ *
+ * as CSV or JSON. The rows are sorted by file name, so files named by date (like 2020-04-11-21-24-40_gen.txt) come out in training order.
+ *
+ * All files share one bounded fork-join pool. Every file is cut into newline-aligned chunks of several MB, like in
+ * FileScorer.scoreParallel, so every worker reads long sequential stretches of one file, and idle workers steal the chunks of
+ * other files. The largest files are started first, so that a few big files do not hold up the end of the batch.
+ * A file that cannot be read gets a row with an error message instead of stopping the batch.
+ *
+ * Usage: java BatchEvaluator [--threads n] [--format csv|json] [--out file] directory-or-glob ...
+ * A directory stands for all .txt and .txt.gz files in it except the BAD files written by badSentencesToFile;
+ * a glob like "gens/*_gen.txt" stands for all files it matches. Gzip-compressed files are scored by one worker each, since they
+ * cannot be cut into chunks; their bytes are the compressed size.
+ *
+ * @author Tisha Anders
+ */
+public class BatchEvaluator
+{
+    /**
+     * The scores of one file.
+     */
+    public static class Row
+    {
+        public final File file;
+        public final FileScorer.Tally tally = new FileScorer.Tally();
+        public long no_of_bytes;
+        public long millis;
+        public String error;
+
+        Row(File file)
+        {
+            this.file = file;
+        }
+
+        public long badWordOrder()
+        {
+            return tally.no_of_tested_gens - tally.no_of_good_order_gens;
+        }
+
+        public long badAgreement()
+        {
+            return tally.no_of_good_order_gens - tally.no_of_good_gens;
+        }
+
+        public long bad()
+        {
+            return tally.no_of_tested_gens - tally.no_of_good_gens;
+        }
+    }
+
+    /**
+     * This task scores one file, forking its chunks into the shared pool.
+     */
+    static class FileTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        final Row row;
+
+        FileTask(Row row)
+        {
+            this.row = row;
+        }
+
+        protected void compute()
+        {
+            long start = System.nanoTime();
+            try
+            {
+                if (GzipPipe.isGzip(row.file))
+                {
+                    // a compressed file cannot be cut into chunks: it is scored by this task alone
+                    row.tally.add(FileScorer.scoreCompressed(row.file).tally);
+                    row.no_of_bytes = row.file.length();
+                }
+                else
+                {
+                    scoreChunks(row);
+                }
+            }
+            catch (IOException | UncheckedIOException e)
+            {
+                row.error = e.toString();
+            }
+            row.millis = (System.nanoTime() - start) / 1000000;
+        }
+
+        void scoreChunks(Row row) throws IOException
+        {
+            try (FileChannel channel = FileScorer.open(row.file))
+            {
+                long size = channel.size();
+                row.tally.add(FileScorer.tallyRange(channel, 0, size, getPool().getParallelism()));
+                row.no_of_bytes = size;
+            }
+        }
+    }
+
+    /**
+     * This method scores a number of files concurrently.
+     * @param files the files to be examined
+     * @param no_of_threads the number of threads shared by all files
+     * @return one row per file, in the order of files
+     */
+    public static List<Row> evaluate(List<File> files, int no_of_threads)
+    {
+        List<Row> rows = new ArrayList<Row>();
+        for (File file : files)
+        {
+            rows.add(new Row(file));
+        }
+        // largest files first
+        Row[] by_size = rows.toArray(new Row[0]);
+        Arrays.sort(by_size, (a, b) -> Long.compare(b.file.length(), a.file.length()));
+        ForkJoinPool pool = new ForkJoinPool(no_of_threads);
+        try
+        {
+            List<FileTask> tasks = new ArrayList<FileTask>();
+            for (Row row : by_size)
+            {
+                tasks.add((FileTask) pool.submit(new FileTask(row)));
+            }
+            for (FileTask task : tasks)
+            {
+                task.join();
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        return rows;
+    }
+
+    /**
+     * This method finds the generation files given by a directory or a glob.
+     * @param pattern a directory (all .txt and .txt.gz files in it, except BAD files) or a glob (e.g. gens/*_gen.txt)
+     * @return the files, sorted by name
+     */
+    public static List<File> files(String pattern) throws IOException
+    {
+        List<File> files = new ArrayList<File>();
+        File dir = new File(pattern);
+        if (dir.isDirectory())
+        {
+            File[] listed = dir.listFiles((d, name) -> (name.endsWith(".txt") || name.endsWith(".txt.gz")) && !name.startsWith("BAD"));
+            if (listed != null)
+            {
+                files.addAll(Arrays.asList(listed));
+            }
+        }
+        else if (dir.isFile() || !hasWildcard(pattern))
+        {
+            // a missing file gets a row with the error
+            files.add(dir);
+        }
+        else
+        {
+            // walk from the longest leading part of the glob that has no wildcards
+            String[] parts = pattern.replace('\\', '/').split("/");
+            StringBuilder base = new StringBuilder();
+            int depth = 0;
+            while (depth < parts.length - 1 && !hasWildcard(parts[depth]))
+            {
+                base.append(parts[depth]).append('/');
+                depth++;
+            }
+            Path root = Paths.get(base.length() == 0 ? "." : base.toString());
+            if (!Files.isDirectory(root))
+            {
+                throw new FileNotFoundException(pattern);
+            }
+            String rest = String.join("/", Arrays.copyOfRange(parts, depth, parts.length));
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + rest);
+            try (Stream<Path> walk = Files.walk(root))
+            {
+                walk.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(root.relativize(p)))
+                    .forEach(p -> files.add(p.toFile()));
+            }
+        }
+        files.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+        return files;
+    }
+
+    /**
+     * This method sorts the files of several directories or globs by name, dropping a file that more than one of them stands for.
+     */
+    static List<File> sortedDistinct(List<File> files)
+    {
+        List<File> sorted = new ArrayList<File>(files);
+        sorted.sort((a, b) -> a.toPath().normalize().compareTo(b.toPath().normalize()));
+        java.util.Set<Path> seen = new java.util.HashSet<Path>();
+        List<File> distinct = new ArrayList<File>();
+        for (File file : sorted)
+        {
+            if (seen.add(file.toPath().toAbsolutePath().normalize()))
+            {
+                distinct.add(file);
+            }
+        }
+        return distinct;
+    }
+
+    static boolean hasWildcard(String part)
+    {
+        return part.indexOf('*') >= 0 || part.indexOf('?') >= 0 || part.indexOf('[') >= 0 || part.indexOf('{') >= 0;
+    }
+
+    /**
+     * This method writes the table as CSV, with a header line.
+     */
+    public static void writeCsv(List<Row> rows, PrintStream out)
+    {
+        out.println("file,sentences,good_word_order,good,bad_word_order,bad_agreement,bad,word_order_percentage,percentage,bytes,millis,error");
+        for (Row row : rows)
+        {
+            FileScorer.Tally t = row.tally;
+            out.println(csvField(row.file.getPath()) + "," + t.no_of_tested_gens + "," + t.no_of_good_order_gens + "," + t.no_of_good_gens
+                + "," + row.badWordOrder() + "," + row.badAgreement() + "," + row.bad()
+                + "," + number(t.wordOrderPercentage()) + "," + number(t.percentage())
+                + "," + row.no_of_bytes + "," + row.millis + "," + (row.error == null ? "" : csvField(row.error)));
+        }
+    }
+
+    /**
+     * This method writes the table as a JSON array with one object per file.
+     */
+    public static void writeJson(List<Row> rows, PrintStream out)
+    {
+        out.println("[");
+        for (int i = 0; i < rows.size(); i++)
+        {
+            Row row = rows.get(i);
+            FileScorer.Tally t = row.tally;
+            out.print("  {\"file\": " + jsonString(row.file.getPath()) + ", \"sentences\": " + t.no_of_tested_gens
+                + ", \"good_word_order\": " + t.no_of_good_order_gens + ", \"good\": " + t.no_of_good_gens
+                + ", \"bad_word_order\": " + row.badWordOrder() + ", \"bad_agreement\": " + row.badAgreement() + ", \"bad\": " + row.bad()
+                + ", \"word_order_percentage\": " + json(t.wordOrderPercentage()) + ", \"percentage\": " + json(t.percentage())
+                + ", \"bytes\": " + row.no_of_bytes + ", \"millis\": " + row.millis
+                + ", \"error\": " + (row.error == null ? "null" : jsonString(row.error)) + "}");
+            out.println(i < rows.size() - 1 ? "," : "");
+        }
+        out.println("]");
+    }
+
+    static String number(double x)
+    {
+        return Double.isNaN(x) ? "" : String.format(Locale.ROOT, "%.4f", x);
+    }
+
+    static String json(double x)
+    {
+        return Double.isNaN(x) ? "null" : String.format(Locale.ROOT, "%.4f", x);
+    }
+
+    static String csvField(String s)
+    {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0)
+        {
+            return s;
+        }
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    static String jsonString(String s)
+    {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                sb.append('\\').append(c);
+            }
+            else if (c < 0x20)
+            {
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+            else
+            {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * This method scores the files given on the command line and writes the table.
+     * @param args [--threads n] [--format csv|json] [--out file] directory-or-glob ...
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int no_of_threads = Runtime.getRuntime().availableProcessors();
+        String format = "csv";
+        String out_file = null;
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--threads") && i + 1 < args.length)
+            {
+                no_of_threads = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("--format") && i + 1 < args.length)
+            {
+                format = args[++i];
+            }
+            else if (args[i].equals("--out") && i + 1 < args.length)
+            {
+                out_file = args[++i];
+            }
+            else
+            {
+                files.addAll(files(args[i]));
+            }
+        }
+        if (files.isEmpty() || !(format.equals("csv") || format.equals("json")))
+        {
+            System.err.println("usage: java BatchEvaluator [--threads n] [--format csv|json] [--out file] directory-or-glob ...");
+            return;
+        }
+        List<Row> rows = evaluate(sortedDistinct(files), no_of_threads);
+        PrintStream out = out_file == null ? System.out : new PrintStream(out_file, "UTF-8");
+        try
+        {
+            if (format.equals("json"))
+            {
+                writeJson(rows, out);
+            }
+            else
+            {
+                writeCsv(rows, out);
+            }
+        }
+        finally
+        {
+            out.flush();
+            if (out != System.out)
+            {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,618 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+/**
+ * A class that checks that the fast validators give exactly the same answers as the reference methods,
+ * BNFParser.BNFparse (word order) and AgreementandBNFParser.checkAgreement (agreement), quirks included: the rewriting of BNFparse with
+ * greedy replaceAll, and the endings of the last and penultimate noun that checkAgreement drops. The reference judgement of a string is
+ *
+ *  BAD_WORD_ORDER  if BNFparse gives 0,
+ *  BAD_AGREEMENT + checkAgreement otherwise, and BAD_AGREEMENT if checkAgreement runs out of endings (IndexOutOfBoundsException),
+ *
+ * like in the file evaluators. Every engine is run on the same inputs and compared with the reference:
+ *
+ *  WORD_ORDER   engines give 1 or 0, compared with BNFparse
+ *  JUDGEMENT    engines give GOOD, BAD_AGREEMENT or BAD_WORD_ORDER, compared with the reference judgement
+ *  GRAMMATICAL  engines give 1 or 0, compared with whether the reference judgement is GOOD
+ *
+ * An engine may abstain on an input it does not handle by giving BNFAutomaton.UNDECIDED; an exception counts as an answer (ERROR).
+ *
+ * Input i is chosen by i % 3 and only depends on the seed and on i:
+ *
+ *  VALID    sentence i of a SentenceGenerator, as written by ExampleBuilder (without the dataset format)
+ *  MUTATED  such a sentence, corrupted by the NegativeExampleGenerator or by one to three random edits (a token replaced, inserted,
+ *           deleted or swapped with the next one, a feature flipped, a piece repeated)
+ *  RANDOM   a random string of tokens, up to the longest sentence, with the odd space or lowercase rule symbol
+ *
+ * The inputs are cut into blocks that are checked in parallel on a fork-join pool. Every disagreement is counted; the first
+ * MAX_EXAMPLES of every engine and kind of input are minimised by delta debugging (ddmin: pieces of the input are deleted as long
+ * as the engine still disagrees with the reference) and reported with both answers.
+ *
+ * Usage: java ConformanceHarness [--inputs n] [--threads n] [--seed s]
+ *
+ * @author Tisha Anders
+ */
+public class ConformanceHarness
+{
+    // kinds of engines
+    public static final int WORD_ORDER = 0;
+    public static final int JUDGEMENT = 1;
+    public static final int GRAMMATICAL = 2;
+
+    // the answer of a method that threw an exception
+    public static final int ERROR = -2;
+
+    // kinds of inputs
+    public static final int VALID = 0;
+    public static final int MUTATED = 1;
+    public static final int RANDOM = 2;
+    public static final String[] SOURCES = {"valid", "mutated", "random"};
+
+    static final int BLOCK_SIZE = 1 << 12;
+    static final int MAX_EXAMPLES = 3;
+    static final String RULE_SYMBOLS = "suxqycdpngvzr";
+    // keeps the random choices of the inputs apart from those of the sentences
+    static final long INPUT_SALT = 0x2545F4914F6CDD1DL;
+
+    /**
+     * A method that gives an answer for a string.
+     */
+    public interface Validator
+    {
+        int validate(String s);
+    }
+
+    /**
+     * A validator to be compared with the reference, with its name and the kind of its answers.
+     */
+    public static class Engine
+    {
+        public final String name;
+        public final int kind;
+        final Validator validator;
+
+        public Engine(String name, int kind, Validator validator)
+        {
+            this.name = name;
+            this.kind = kind;
+            this.validator = validator;
+        }
+    }
+
+    /**
+     * An input on which an engine disagrees with the reference, with its minimised form.
+     */
+    public static class Counterexample
+    {
+        public final String engine;
+        public final int source;
+        public final long index;
+        public final String input;
+        public final String minimised;
+        public final int expected;
+        public final int actual;
+
+        Counterexample(String engine, int source, long index, String input, String minimised, int expected, int actual)
+        {
+            this.engine = engine;
+            this.source = source;
+            this.index = index;
+            this.input = input;
+            this.minimised = minimised;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        public String toString()
+        {
+            return engine + " on " + SOURCES[source] + " input " + index + ": \"" + input + "\"" + System.lineSeparator()
+                + "  minimised \"" + minimised + "\": reference " + expected + ", engine " + actual;
+        }
+    }
+
+    /**
+     * The outcome of a run: per engine and kind of input, the number of answers compared, abstentions and disagreements.
+     */
+    public static class Report
+    {
+        public final List<Engine> engines;
+        public final long[][] compared;
+        public final long[][] abstained;
+        public final long[][] disagreements;
+        public final List<Counterexample> examples = new ArrayList<Counterexample>();
+        public final long[] reference_judgements = new long[3];
+        public long no_of_inputs;
+
+        Report(List<Engine> engines)
+        {
+            this.engines = engines;
+            compared = new long[engines.size()][SOURCES.length];
+            abstained = new long[engines.size()][SOURCES.length];
+            disagreements = new long[engines.size()][SOURCES.length];
+        }
+
+        /**
+         * This method adds the outcome of the following inputs, keeping the first counterexamples.
+         */
+        void add(Report other)
+        {
+            no_of_inputs += other.no_of_inputs;
+            for (int j = 0; j < 3; j++)
+            {
+                reference_judgements[j] += other.reference_judgements[j];
+            }
+            for (int e = 0; e < engines.size(); e++)
+            {
+                for (int k = 0; k < SOURCES.length; k++)
+                {
+                    compared[e][k] += other.compared[e][k];
+                    abstained[e][k] += other.abstained[e][k];
+                    disagreements[e][k] += other.disagreements[e][k];
+                }
+            }
+            for (Counterexample example : other.examples)
+            {
+                if (examples(example.engine, example.source) < MAX_EXAMPLES)
+                {
+                    examples.add(example);
+                }
+            }
+        }
+
+        int examples(String engine, int source)
+        {
+            int n = 0;
+            for (Counterexample example : examples)
+            {
+                if (example.engine.equals(engine) && example.source == source)
+                {
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        /**
+         * @return the total number of disagreements
+         */
+        public long totalDisagreements()
+        {
+            long n = 0;
+            for (long[] row : disagreements)
+            {
+                for (long d : row)
+                {
+                    n += d;
+                }
+            }
+            return n;
+        }
+
+        public String toString()
+        {
+            String nl = System.lineSeparator();
+            StringBuilder sb = new StringBuilder();
+            sb.append(no_of_inputs).append(" inputs; reference: ").append(reference_judgements[BNFAutomaton.GOOD]).append(" good, ")
+                .append(reference_judgements[BNFAutomaton.BAD_AGREEMENT]).append(" bad agreement, ")
+                .append(reference_judgements[BNFAutomaton.BAD_WORD_ORDER]).append(" bad word order").append(nl);
+            sb.append(String.format(Locale.ROOT, "%-40s %-8s %12s %12s %12s", "engine", "inputs", "compared", "abstained", "disagreed")).append(nl);
+            for (int e = 0; e < engines.size(); e++)
+            {
+                for (int k = 0; k < SOURCES.length; k++)
+                {
+                    sb.append(String.format(Locale.ROOT, "%-40s %-8s %12d %12d %12d", k == 0 ? engines.get(e).name : "", SOURCES[k],
+                            compared[e][k], abstained[e][k], disagreements[e][k])).append(nl);
+                }
+            }
+            for (Counterexample example : examples)
+            {
+                sb.append(example).append(nl);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * This method gives the reference judgement of a string, from BNFparse and checkAgreement.
+     * @return GOOD, BAD_AGREEMENT, BAD_WORD_ORDER or ERROR
+     */
+    public static int referenceJudgement(String s)
+    {
+        try
+        {
+            if (BNFParser.BNFparse(s) == 0)
+            {
+                return BNFAutomaton.BAD_WORD_ORDER;
+            }
+        }
+        catch (RuntimeException e)
+        {
+            return ERROR;
+        }
+        try
+        {
+            return BNFAutomaton.BAD_AGREEMENT + AgreementandBNFParser.checkAgreement(s);
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            return BNFAutomaton.BAD_AGREEMENT; // too few endings left to check
+        }
+        catch (RuntimeException e)
+        {
+            return ERROR;
+        }
+    }
+
+    /**
+     * This method gives the answer the reference gives for an engine of a kind.
+     * @param judgement the reference judgement
+     */
+    static int expected(int kind, int judgement)
+    {
+        if (judgement == ERROR)
+        {
+            return ERROR;
+        }
+        switch (kind)
+        {
+            case WORD_ORDER:
+                return judgement == BNFAutomaton.BAD_WORD_ORDER ? 0 : 1;
+            case GRAMMATICAL:
+                return judgement == BNFAutomaton.GOOD ? 1 : 0;
+            default:
+                return judgement;
+        }
+    }
+
+    /**
+     * This method runs an engine.
+     * @return its answer, UNDECIDED or ERROR
+     */
+    static int answer(Engine engine, String s)
+    {
+        try
+        {
+            return engine.validator.validate(s);
+        }
+        catch (RuntimeException e)
+        {
+            return ERROR;
+        }
+    }
+
+    /**
+     * @return whether the engine gives an answer for the string that differs from that of the reference
+     */
+    static boolean disagrees(Engine engine, String s)
+    {
+        int actual = answer(engine, s);
+        return actual != BNFAutomaton.UNDECIDED && actual != expected(engine.kind, referenceJudgement(s));
+    }
+
+    /**
+     * This method minimises an input on which an engine disagrees with the reference, by delta debugging: it deletes ever smaller
+     * pieces of the input as long as the engine still disagrees, until no single character can be deleted.
+     * @param engine the engine
+     * @param s an input on which the engine disagrees
+     * @return a shortest-found input on which the engine disagrees
+     */
+    public static String minimise(Engine engine, String s)
+    {
+        int n = 2;
+        while (s.length() >= 2)
+        {
+            n = Math.min(n, s.length());
+            int piece = (s.length() + n - 1) / n;
+            boolean reduced = false;
+            for (int start = 0; start < s.length(); start += piece)
+            {
+                String complement = s.substring(0, start) + s.substring(Math.min(start + piece, s.length()));
+                if (disagrees(engine, complement))
+                {
+                    s = complement;
+                    n = Math.max(n - 1, 2);
+                    reduced = true;
+                    break;
+                }
+            }
+            if (!reduced)
+            {
+                if (n >= s.length())
+                {
+                    break;
+                }
+                n = Math.min(2 * n, s.length());
+            }
+        }
+        if (s.length() == 1 && disagrees(engine, ""))
+        {
+            s = "";
+        }
+        return s;
+    }
+
+    /**
+     * This method gives the engines that are checked by default: every fast path that stands in for the reference methods.
+     */
+    public static List<Engine> defaultEngines()
+    {
+        List<Engine> engines = new ArrayList<Engine>();
+        engines.add(new Engine("BNFParser.fastBNFparse", WORD_ORDER, s -> BNFParser.fastBNFparse(s)));
+        engines.add(new Engine("BNFAutomaton.parse", WORD_ORDER, s -> BNFAutomaton.parse(s)));
+        // the automaton compiled anew from the same bounds, not the cached DEFAULT
+        final BNFAutomaton compiled = new Grammar(Grammar.DEFAULT.min_clauses, Grammar.DEFAULT.max_clauses,
+                Grammar.DEFAULT.min_d, Grammar.DEFAULT.max_d, Grammar.DEFAULT.min_p, Grammar.DEFAULT.max_p,
+                Grammar.DEFAULT.min_n, Grammar.DEFAULT.max_n, Grammar.DEFAULT.min_v, Grammar.DEFAULT.max_v).automaton();
+        engines.add(new Engine("Grammar.automaton().wordOrder", WORD_ORDER, s -> compiled.wordOrder(s, 0, s.length())));
+        engines.add(new Engine("AgreementandBNFParser.fastJudgement", JUDGEMENT, s -> AgreementandBNFParser.fastJudgement(s)));
+        engines.add(new Engine("BNFAutomaton.judge(byte[])", JUDGEMENT, s -> {
+                byte[] bytes = s.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+                return BNFAutomaton.judge(bytes, 0, bytes.length);
+            }));
+        engines.add(new Engine("FileScorer.judgeLine", JUDGEMENT, s -> {
+                // a generation line: the sentence and the character the file evaluators crop
+                byte[] line = (s + " ").getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+                return FileScorer.judgeLine(line, 0, line.length);
+            }));
+        engines.add(new Engine("PrefixValidator", GRAMMATICAL, s -> {
+                PrefixValidator validator = new PrefixValidator();
+                for (int i = 0; i < s.length(); i++)
+                {
+                    if (BNFAutomaton.symbol(s.charAt(i)) >= BNFAutomaton.NO_OF_TOKENS)
+                    {
+                        return BNFAutomaton.UNDECIDED; // only tokens are validated
+                    }
+                    validator.accept(s.charAt(i));
+                }
+                return validator.isComplete() ? 1 : 0;
+            }));
+        return engines;
+    }
+
+    /**
+     * The inputs of a block, generated like sentences: input i only depends on the seed and on i.
+     */
+    static class Inputs
+    {
+        final SentenceGenerator generator;
+        final NegativeExampleGenerator corrupter;
+        final long seed;
+        final int max_length;
+        final byte[] buf;
+        long state;
+
+        Inputs(long seed)
+        {
+            this.seed = seed;
+            generator = Grammar.DEFAULT.generator(seed, false);
+            corrupter = new NegativeExampleGenerator(seed, false, Grammar.DEFAULT, 1, NegativeExampleGenerator.ALL);
+            max_length = corrupter.maxSentenceLength();
+            buf = new byte[max_length];
+        }
+
+        int nextInt(int bound)
+        {
+            state += SentenceGenerator.GOLDEN_GAMMA;
+            return (int) (((SentenceGenerator.mix(state) >>> 32) * bound) >>> 32);
+        }
+
+        char randomToken()
+        {
+            return BNFAutomaton.TOKENS.charAt(nextInt(BNFAutomaton.NO_OF_TOKENS));
+        }
+
+        /**
+         * This method gives input number index.
+         */
+        String input(long index)
+        {
+            state = SentenceGenerator.mix(seed + INPUT_SALT + (index + 1) * SentenceGenerator.GOLDEN_GAMMA);
+            switch ((int) (index % 3))
+            {
+                case VALID:
+                    return new String(buf, 0, generator.sentence(index, buf, 0), java.nio.charset.StandardCharsets.ISO_8859_1);
+                case MUTATED:
+                    if (nextInt(2) == 0)
+                    {
+                        return new String(buf, 0, corrupter.sentence(index, buf, 0), java.nio.charset.StandardCharsets.ISO_8859_1);
+                    }
+                    StringBuilder sb = new StringBuilder(new String(buf, 0, generator.sentence(index, buf, 0),
+                            java.nio.charset.StandardCharsets.ISO_8859_1));
+                    for (int edits = 1 + nextInt(3); edits > 0 && sb.length() > 0; edits--)
+                    {
+                        mutate(sb);
+                    }
+                    return sb.toString();
+                default:
+                    int length = nextInt(2) == 0 ? nextInt(16) : nextInt(max_length + 1);
+                    StringBuilder random = new StringBuilder(length);
+                    for (int i = 0; i < length; i++)
+                    {
+                        int r = nextInt(64);
+                        if (r == 0)
+                        {
+                            random.append(' ');
+                        }
+                        else if (r == 1)
+                        {
+                            random.append(RULE_SYMBOLS.charAt(nextInt(RULE_SYMBOLS.length())));
+                        }
+                        else
+                        {
+                            random.append(randomToken());
+                        }
+                    }
+                    return random.toString();
+            }
+        }
+
+        /**
+         * This method makes one random edit.
+         */
+        void mutate(StringBuilder sb)
+        {
+            int i = nextInt(sb.length());
+            switch (nextInt(6))
+            {
+                case 0:
+                    sb.setCharAt(i, randomToken());
+                    break;
+                case 1:
+                    sb.insert(i, randomToken());
+                    break;
+                case 2:
+                    sb.deleteCharAt(i);
+                    break;
+                case 3:
+                    if (i + 1 < sb.length())
+                    {
+                        char c = sb.charAt(i);
+                        sb.setCharAt(i, sb.charAt(i + 1));
+                        sb.setCharAt(i + 1, c);
+                    }
+                    break;
+                case 4:
+                    char c = sb.charAt(i);
+                    sb.setCharAt(i, c == 'A' ? 'B' : c == 'B' ? 'A' : c == 'S' ? 'T' : c == 'T' ? 'S' : c);
+                    break;
+                default:
+                    int end = Math.min(sb.length(), i + 1 + nextInt(8));
+                    sb.insert(end, sb.substring(i, end));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * This task checks a range of inputs, splitting it in halves until a single block is left.
+     */
+    static class BlockTask extends RecursiveTask<Report>
+    {
+        private static final long serialVersionUID = 1L;
+
+        final List<Engine> engines;
+        final long seed;
+        final long lo;
+        final long hi;
+
+        BlockTask(List<Engine> engines, long seed, long lo, long hi)
+        {
+            this.engines = engines;
+            this.seed = seed;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected Report compute()
+        {
+            if (hi - lo > BLOCK_SIZE)
+            {
+                long mid = lo + (hi - lo) / 2 / BLOCK_SIZE * BLOCK_SIZE;
+                mid = mid > lo ? mid : lo + BLOCK_SIZE;
+                BlockTask right = new BlockTask(engines, seed, mid, hi);
+                right.fork();
+                Report left = new BlockTask(engines, seed, lo, mid).compute();
+                left.add(right.join());
+                return left;
+            }
+            Report report = new Report(engines);
+            Inputs inputs = new Inputs(seed);
+            for (long index = lo; index < hi; index++)
+            {
+                String s = inputs.input(index);
+                int source = (int) (index % 3);
+                int judgement = referenceJudgement(s);
+                report.no_of_inputs++;
+                if (judgement >= 0)
+                {
+                    report.reference_judgements[judgement]++;
+                }
+                for (int e = 0; e < engines.size(); e++)
+                {
+                    Engine engine = engines.get(e);
+                    int actual = answer(engine, s);
+                    if (actual == BNFAutomaton.UNDECIDED)
+                    {
+                        report.abstained[e][source]++;
+                        continue;
+                    }
+                    report.compared[e][source]++;
+                    int expected = expected(engine.kind, judgement);
+                    if (actual != expected)
+                    {
+                        report.disagreements[e][source]++;
+                        if (report.examples(engine.name, source) < MAX_EXAMPLES)
+                        {
+                            String minimised = minimise(engine, s);
+                            report.examples.add(new Counterexample(engine.name, source, index, s, minimised,
+                                    expected(engine.kind, referenceJudgement(minimised)), answer(engine, minimised)));
+                        }
+                    }
+                }
+            }
+            return report;
+        }
+    }
+
+    /**
+     * This method compares engines with the reference on inputs 0 to no_of_inputs-1.
+     * @param engines the engines to be checked
+     * @param seed the seed of the inputs
+     * @param no_of_inputs the number of inputs
+     * @param no_of_threads the number of threads to use
+     * @return the counts and the first counterexamples, the same for any number of threads
+     */
+    public static Report run(List<Engine> engines, long seed, long no_of_inputs, int no_of_threads)
+    {
+        ForkJoinPool pool = new ForkJoinPool(no_of_threads);
+        try
+        {
+            return pool.invoke(new BlockTask(engines, seed, 0, no_of_inputs));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * This method checks the default engines and prints the report; it exits with status 1 if any engine disagreed.
+     * @param args [--inputs n] [--threads n] [--seed s]
+     */
+    public static void main(String[] args)
+    {
+        long no_of_inputs = 1000000;
+        int no_of_threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            if (args[i].equals("--inputs"))
+            {
+                no_of_inputs = Long.parseLong(args[i + 1]);
+            }
+            else if (args[i].equals("--threads"))
+            {
+                no_of_threads = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("--seed"))
+            {
+                seed = Long.parseLong(args[i + 1]);
+            }
+            else
+            {
+                System.err.println("usage: java ConformanceHarness [--inputs n] [--threads n] [--seed s]");
+                return;
+            }
+        }
+        long start = System.nanoTime();
+        Report report = run(defaultEngines(), seed, no_of_inputs, no_of_threads);
+        System.out.print(report);
+        System.out.println(String.format(Locale.ROOT, "%.1f s", (System.nanoTime() - start) * 1e-9));
+        if (report.totalDisagreements() > 0)
+        {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+/**
+ * A class that describes a corpus (a dataset written by ExampleBuilder, or a dump of generations) in one streaming pass, to sanity-check
+ * it before training. It gives
+ *
+ *  the distribution of sentence lengths (in tokens) and of the number of relative clauses,
+ *  the frequency of every token, and with it the balance of the features A/B (animacy) and S/T (number), also for subjects only,
+ *  the number of distinct sentences.
+ *
+ * The bounded quantities are counted exactly, in arrays of longs; lengths and numbers of clauses above the last bucket are counted in it.
+ * The distinct sentences are estimated with a HyperLogLog sketch of 2^14 registers (a standard error of about 0.8%), fed with the
+ * fingerprints of FingerprintIndex, so spaces and tabs do not matter. Memory does not grow with the file.
+ *
+ * Statistics of several files or shards can be added up; adding two sketches gives the sketch of the union. A large file is cut into
+ * newline-aligned chunks that are counted in parallel by FileScorer.reduceChunks; gzip-compressed files are read on one thread.
+ *
+ * Usage: java CorpusStatistics [--threads n] file ...   (the statistics of every file, and of all files together)
+ *
+ * @author Tisha Anders
+ */
+public class CorpusStatistics
+{
+    static final int NO_OF_LENGTHS = 512;
+    static final int NO_OF_CLAUSE_COUNTS = 64;
+
+    /**
+     * A HyperLogLog sketch of the number of distinct 64-bit hashes.
+     */
+    public static class HyperLogLog
+    {
+        static final int P = 14;
+        static final int M = 1 << P;
+
+        final byte[] registers = new byte[M];
+
+        /**
+         * This method adds a hash, whose bits must be uniformly distributed.
+         */
+        public void add(long hash)
+        {
+            int j = (int) (hash >>> (64 - P));
+            int rank = Long.numberOfLeadingZeros((hash << P) | (1L << (P - 1))) + 1;
+            if (rank > registers[j])
+            {
+                registers[j] = (byte) rank;
+            }
+        }
+
+        /**
+         * This method merges another sketch into this one.
+         */
+        public void add(HyperLogLog other)
+        {
+            for (int j = 0; j < M; j++)
+            {
+                if (other.registers[j] > registers[j])
+                {
+                    registers[j] = other.registers[j];
+                }
+            }
+        }
+
+        /**
+         * @return the estimated number of distinct hashes
+         */
+        public long estimate()
+        {
+            double sum = 0;
+            int zeros = 0;
+            for (int j = 0; j < M; j++)
+            {
+                sum += Math.scalb(1.0, -registers[j]);
+                if (registers[j] == 0)
+                {
+                    zeros++;
+                }
+            }
+            double alpha = 0.7213 / (1 + 1.079 / M);
+            double estimate = alpha * M * (double) M / sum;
+            if (estimate <= 2.5 * M && zeros > 0)
+            {
+                estimate = M * Math.log((double) M / zeros); // linear counting for small numbers
+            }
+            return Math.round(estimate);
+        }
+    }
+
+    public long no_of_lines;
+    public long no_of_bytes;
+    // occurrences of every byte value
+    public final long[] byte_counts = new long[256];
+    public final long[] lengths = new long[NO_OF_LENGTHS];
+    public final long[] clause_counts = new long[NO_OF_CLAUSE_COUNTS];
+    // the number of the subject: the first S or T of a sentence
+    public long subject_s;
+    public long subject_t;
+    public final HyperLogLog distinct = new HyperLogLog();
+
+    /**
+     * This method counts one sentence.
+     * @param buf the buffer holding the sentence
+     * @param from index of the first byte
+     * @param to index after the last byte, excluding the line terminator
+     */
+    public void line(byte[] buf, int from, int to)
+    {
+        no_of_lines++;
+        no_of_bytes += to - from;
+        int length = 0;
+        int clauses = 0;
+        byte subject = 0;
+        // the fingerprint of FingerprintIndex, computed in the same pass
+        long h = FingerprintIndex.FNV_OFFSET_BASIS;
+        for (int i = from; i < to; i++)
+        {
+            byte b = buf[i];
+            byte_counts[b & 0xFF]++;
+            if (!FingerprintIndex.skipped(b))
+            {
+                length++;
+            }
+            h = FingerprintIndex.step(h, b);
+            if (b == 'C')
+            {
+                clauses++;
+            }
+            else if (subject == 0 && (b == 'S' || b == 'T'))
+            {
+                subject = b;
+            }
+        }
+        lengths[Math.min(length, NO_OF_LENGTHS - 1)]++;
+        clause_counts[Math.min(clauses, NO_OF_CLAUSE_COUNTS - 1)]++;
+        if (subject == 'S')
+        {
+            subject_s++;
+        }
+        else if (subject == 'T')
+        {
+            subject_t++;
+        }
+        distinct.add(FingerprintIndex.finish(h));
+    }
+
+    /**
+     * This method adds the statistics of another corpus (e.g. another shard) to these.
+     */
+    public void add(CorpusStatistics other)
+    {
+        no_of_lines += other.no_of_lines;
+        no_of_bytes += other.no_of_bytes;
+        for (int i = 0; i < 256; i++)
+        {
+            byte_counts[i] += other.byte_counts[i];
+        }
+        for (int i = 0; i < NO_OF_LENGTHS; i++)
+        {
+            lengths[i] += other.lengths[i];
+        }
+        for (int i = 0; i < NO_OF_CLAUSE_COUNTS; i++)
+        {
+            clause_counts[i] += other.clause_counts[i];
+        }
+        subject_s += other.subject_s;
+        subject_t += other.subject_t;
+        distinct.add(other.distinct);
+    }
+
+    /**
+     * @return the estimated number of distinct sentences
+     */
+    public long distinctSentences()
+    {
+        return distinct.estimate();
+    }
+
+    /**
+     * @return the number of occurrences of a token, e.g. 'A'
+     */
+    public long tokenCount(char token)
+    {
+        return byte_counts[token];
+    }
+
+    /**
+     * This method computes the statistics of a file.
+     * @param file the file, with one sentence per line; it may be gzip-compressed
+     * @param no_of_threads the number of threads to use
+     * @return the statistics, the same for any number of threads
+     */
+    public static CorpusStatistics of(File file, int no_of_threads) throws IOException
+    {
+        return FileScorer.reduceChunks(file, no_of_threads, CorpusStatistics::new,
+                statistics -> (buf, from, to, offset) -> statistics.line(buf, from, to), (left, right) -> {
+                    left.add(right);
+                    return left;
+                });
+    }
+
+    static String percentage(long part, long whole)
+    {
+        return whole == 0 ? "-" : String.format(Locale.ROOT, "%.2f%%", part * Math.pow(whole, -1) * 100);
+    }
+
+    static void histogram(StringBuilder sb, String title, long[] counts, long total)
+    {
+        sb.append(title).append(":").append(System.lineSeparator());
+        for (int i = 0; i < counts.length; i++)
+        {
+            if (counts[i] > 0)
+            {
+                String bucket = i == counts.length - 1 ? i + "+" : Integer.toString(i);
+                sb.append(String.format("  %5s  %12d  %8s", bucket, counts[i], percentage(counts[i], total))).append(System.lineSeparator());
+            }
+        }
+    }
+
+    /**
+     * This method describes the statistics as a readable report.
+     */
+    public String report()
+    {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        sb.append("lines ").append(no_of_lines).append(", bytes ").append(no_of_bytes)
+            .append(", distinct sentences ~").append(distinctSentences()).append(nl);
+        long tokens = 0;
+        for (char token : BNFAutomaton.TOKENS.toCharArray())
+        {
+            tokens += byte_counts[token];
+        }
+        sb.append("tokens:");
+        for (char token : BNFAutomaton.TOKENS.toCharArray())
+        {
+            sb.append(' ').append(token).append(' ').append(byte_counts[token]);
+        }
+        long other = -tokens;
+        for (int b = 0; b < 256; b++)
+        {
+            if (b != ' ' && b != '\t' && b != '\r')
+            {
+                other += byte_counts[b];
+            }
+        }
+        if (other > 0)
+        {
+            sb.append(", other ").append(other);
+        }
+        sb.append(nl);
+        sb.append("animacy A ").append(percentage(byte_counts['A'], byte_counts['A'] + byte_counts['B']))
+            .append(", number S ").append(percentage(byte_counts['S'], byte_counts['S'] + byte_counts['T']))
+            .append(", subject number S ").append(percentage(subject_s, subject_s + subject_t)).append(nl);
+        histogram(sb, "length (tokens)", lengths, no_of_lines);
+        histogram(sb, "relative clauses", clause_counts, no_of_lines);
+        return sb.toString();
+    }
+
+    /**
+     * This method prints the statistics of every file given on the command line and, for several files, of all of them together.
+     * @param args [--threads n] file ...
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int no_of_threads = Runtime.getRuntime().availableProcessors();
+        int i = 0;
+        if (args.length > 1 && args[0].equals("--threads"))
+        {
+            no_of_threads = Integer.parseInt(args[1]);
+            i = 2;
+        }
+        if (i >= args.length)
+        {
+            System.err.println("usage: java CorpusStatistics [--threads n] file ...");
+            return;
+        }
+        CorpusStatistics all = new CorpusStatistics();
+        int no_of_files = args.length - i;
+        for (; i < args.length; i++)
+        {
+            CorpusStatistics statistics = of(new File(args[i]), no_of_threads);
+            System.out.println(args[i]);
+            System.out.print(statistics.report());
+            all.add(statistics);
+        }
+        if (no_of_files > 1)
+        {
+            System.out.println("all files");
+            System.out.print(all.report());
+        }
+    }
+}
@@ -1,21 +1,41 @@
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.Random;
 import java.io.PrintStream;
 import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 /**
  * In this class, a given number of training examples in my language are written to a .txt file. Use toFile(String file_name, int m) for this.  
+ * For very large, reproducible datasets use toFile(String file_name, long m, long seed, int no_of_threads), which generates the sentences
+ * with the SentenceGenerator on several threads.
+ * labelledToFile writes sentences of which a given share is corrupted on purpose, with a label column telling how.
+ * runLengthToFile writes them to a compact binary RunLengthCorpus instead, which can be read in any order without a scan.
+ * All of them count their progress (sentences, bytes, generate, wait and write time) in Metrics.GENERATION.
+ * If file_name ends with .gz, e.g. "train.gz", they write a gzip-compressed file instead ("train.txt.gz"); it is compressed by a
+ * GzipPipe on a thread of its own, while the next sentences are generated.
  *
  * @author Tisha Anders
  */
 public class ExampleBuilder
 {
-    // Build methods to pick word-specific length
+    // number of sentences generated by one task of toFile(file_name, m, seed, no_of_threads)
+    static final int SENTENCES_PER_BLOCK = 1 << 16;
+    // number of sentences toFile(file_name, m) generates before it writes them
+    static final int SENTENCES_PER_BUFFER = 1 << 12;
+
+    // Build methods to pick word-specific length, within the bounds of Grammar.DEFAULT
     // n_x is the number of Xs contained in the word class X  
     /**
      * This method generates an n_n (number of Ns in noun) randomly, between 1 and 9
@@ -25,7 +45,7 @@ public class ExampleBuilder
     static int generate_n_n()
     {
         Random rand = new Random();
-        return rand.nextInt(9) + 1;
+        return rand.nextInt(Grammar.DEFAULT.max_n - Grammar.DEFAULT.min_n + 1) + Grammar.DEFAULT.min_n;
     }
 
     /**
@@ -36,7 +56,7 @@ public class ExampleBuilder
     static int generate_n_v()
     {
         Random rand = new Random();
-        return rand.nextInt(5) + 1;
+        return rand.nextInt(Grammar.DEFAULT.max_v - Grammar.DEFAULT.min_v + 1) + Grammar.DEFAULT.min_v;
     }
 
     /**
@@ -47,7 +67,7 @@ public class ExampleBuilder
     static int generate_n_d()
     {
         Random rand = new Random();
-        return rand.nextInt(4);
+        return rand.nextInt(Grammar.DEFAULT.max_d - Grammar.DEFAULT.min_d + 1) + Grammar.DEFAULT.min_d;
     }
 
     /**
@@ -58,7 +78,7 @@ public class ExampleBuilder
     static int generate_n_p()
     {
         Random rand = new Random();
-        return rand.nextInt(3);
+        return rand.nextInt(Grammar.DEFAULT.max_p - Grammar.DEFAULT.min_p + 1) + Grammar.DEFAULT.min_p;
     }
 
     // Build methods that assemble words
@@ -234,8 +254,8 @@ public class ExampleBuilder
         Boolean last_noun_animate;
         Boolean last_noun_s;
         Random rand5 = new Random();
-        int n_rel_clauses = rand5.nextInt(4); // between 1 and 4 relative clauses in 1 sentence, because of 0<=i<=3 in the for-loop below
-        for (int i = 0; i <= n_rel_clauses; i++)
+        int n_rel_clauses = rand5.nextInt(Grammar.DEFAULT.max_clauses - Grammar.DEFAULT.min_clauses + 1) + Grammar.DEFAULT.min_clauses; // between 1 and 4 relative clauses in 1 sentence
+        for (int i = 0; i < n_rel_clauses; i++)
         {
             int lastN = sentence_so_far.lastIndexOf("N");
             if (sentence_so_far.charAt(lastN + 1) == 'A')
@@ -300,13 +320,312 @@ public class ExampleBuilder
      */
     static void toFile(String file_name, int m) throws FileNotFoundException
     {
-        File myFile = new File(file_name + ".txt");
-        PrintStream p = new PrintStream(myFile);
-        for (int i = 1; i <= m; i++)
+        File myFile = txtFile(file_name);
+        PrintStream p = new PrintStream(new BufferedOutputStream(GzipPipe.create(myFile), 1 << 16));
+        Metrics metrics = Metrics.GENERATION;
+        String separator = System.lineSeparator();
+        StringBuilder buffer = new StringBuilder();
+        // the sentences are timed per buffer of SENTENCES_PER_BUFFER, not one by one
+        for (int i = 0; i < m; i += SENTENCES_PER_BUFFER)
         {
-            String sentence = sentence();
-            p.println(sentence);
+            int no_of_sentences = Math.min(SENTENCES_PER_BUFFER, m - i);
+            long generate_start = System.nanoTime();
+            buffer.setLength(0);
+            for (int k = 0; k < no_of_sentences; k++)
+            {
+                buffer.append(sentence()).append(separator);
+            }
+            long write_start = System.nanoTime();
+            p.print(buffer);
+            long write_end = System.nanoTime();
+            metrics.time(Metrics.GENERATE, write_start - generate_start);
+            metrics.latency(Metrics.GENERATE, write_start - generate_start);
+            metrics.time(Metrics.WRITE, write_end - write_start);
+            metrics.latency(Metrics.WRITE, write_end - write_start);
+            metrics.sentences(no_of_sentences, buffer.length());
         }
         p.close();
     }
+
+    /**
+     * This method writes m generated sentences to a .txt file, generating them in blocks on several threads.
+     * Sentence i only depends on the seed and on i, and the blocks are written in order, so the same seed and m always give the same file, 
+     * whatever the number of threads.
+     * @param file_name the file we want to write to, excluding .txt
+     * @param m the number of sentences we want to generate
+     * @param seed the seed of the dataset
+     * @param no_of_threads the number of threads generating sentences
+     */
+    static void toFile(String file_name, long m, long seed, int no_of_threads) throws IOException
+    {
+        toFile(file_name, m, seed, no_of_threads, Grammar.DEFAULT);
+    }
+
+    /**
+     * This method writes m generated sentences of a given grammar to a .txt file, generating them in blocks on several threads.
+     * @param file_name the file we want to write to, excluding .txt
+     * @param m the number of sentences we want to generate
+     * @param seed the seed of the dataset
+     * @param no_of_threads the number of threads generating sentences
+     * @param grammar the bounds of the sentences
+     */
+    static void toFile(String file_name, long m, final long seed, int no_of_threads, final Grammar grammar) throws IOException
+    {
+        final byte[] separator = System.lineSeparator().getBytes("US-ASCII");
+        writeBlocks(file_name, m, no_of_threads, (first, last) -> block(grammar, seed, first, last, separator));
+    }
+
+    /**
+     * This method writes m sentences, a given share of them corrupted, to a .txt file. Every line holds a sentence in the format of
+     * toFile, a tab and the label of the sentence: "good" or the kind of corruption (see NegativeExampleGenerator).
+     * The sentences are generated in blocks on several threads, like in toFile, and the same seed always gives the same file.
+     * @param file_name the file we want to write to, excluding .txt
+     * @param m the number of sentences we want to generate
+     * @param seed the seed of the dataset
+     * @param no_of_threads the number of threads generating sentences
+     * @param corruption_rate the share of sentences to corrupt, between 0 and 1
+     */
+    static void labelledToFile(String file_name, long m, long seed, int no_of_threads, double corruption_rate) throws IOException
+    {
+        labelledToFile(file_name, m, seed, no_of_threads, Grammar.DEFAULT, corruption_rate, NegativeExampleGenerator.ALL);
+    }
+
+    /**
+     * This method writes m sentences of a given grammar, a given share of them corrupted in the given ways, to a labelled .txt file.
+     * @param file_name the file we want to write to, excluding .txt
+     * @param m the number of sentences we want to generate
+     * @param seed the seed of the dataset
+     * @param no_of_threads the number of threads generating sentences
+     * @param grammar the bounds of the sentences
+     * @param corruption_rate the share of sentences to corrupt, between 0 and 1
+     * @param kinds the kinds of corruption, one bit per label of NegativeExampleGenerator
+     */
+    static void labelledToFile(String file_name, long m, final long seed, int no_of_threads, final Grammar grammar,
+                               final double corruption_rate, final int kinds) throws IOException
+    {
+        final byte[] separator = System.lineSeparator().getBytes("US-ASCII");
+        // fail before any thread is started
+        new NegativeExampleGenerator(seed, true, grammar, corruption_rate, kinds);
+        writeBlocks(file_name, m, no_of_threads, (first, last) -> labelledBlock(grammar, seed, corruption_rate, kinds, first, last, separator));
+    }
+
+    /**
+     * This method writes m generated sentences as integer-encoded, padded tensors in .npy format (see NpyExport), instead of text:
+     * the intros to file_name.encoder.npy and the rest of the sentences to file_name.decoder.npy.
+     * The sentences are the same as those toFile(file_name, m, seed, no_of_threads, grammar) writes.
+     * @param file_name the name of the .npy files
+     * @param m the number of sentences we want to generate
+     * @param seed the seed of the dataset
+     * @param no_of_threads the number of threads generating sentences
+     * @param grammar the bounds of the sentences
+     * @param bucket_width the step of the length buckets, or 0 for one pair of arrays
+     * @return the files written
+     */
+    static java.util.List<File> npyToFile(String file_name, long m, final long seed, int no_of_threads, final Grammar grammar,
+                                          int bucket_width) throws IOException
+    {
+        final byte[] separator = {'\n'};
+        final NpyExport export = NpyExport.forGrammar(file_name, grammar, bucket_width);
+        java.util.List<File> files;
+        try
+        {
+            generateBlocks(file_name, m, no_of_threads, (first, last) -> block(grammar, seed, first, last, separator), lines(export::line));
+        }
+        finally
+        {
+            files = export.close();
+        }
+        return files;
+    }
+
+    /**
+     * This method writes m sentences in the dataset format to file_name + ".rlc", a RunLengthCorpus with an index, so that the sentences
+     * can be read back in any order; decoded, they are the lines toFile writes for the same seed.
+     * @return the corpus file
+     */
+    static File runLengthToFile(String file_name, long m, final long seed, int no_of_threads, final Grammar grammar) throws IOException
+    {
+        final byte[] separator = {'\n'};
+        File file = new File(file_name + ".rlc");
+        try (final RunLengthCorpus.Writer writer = new RunLengthCorpus.Writer(file))
+        {
+            generateBlocks(file_name, m, no_of_threads, (first, last) -> block(grammar, seed, first, last, separator), lines(writer::line));
+        }
+        return file;
+    }
+
+    /**
+     * Generates the sentences first to last-1 of a dataset.
+     */
+    interface BlockSource
+    {
+        ByteBuffer block(long first, long last);
+    }
+
+    /**
+     * Receives the blocks of a dataset, in order.
+     */
+    interface BlockSink
+    {
+        void write(ByteBuffer block) throws IOException;
+    }
+
+    /**
+     * This method gives a sink that splits the blocks of a dataset into lines and hands them to a consumer, without the newlines.
+     */
+    static BlockSink lines(final SentenceSource.SentenceConsumer consumer)
+    {
+        return block -> {
+                byte[] buf = block.array();
+                int start = 0;
+                for (int i = 0; i < block.limit(); i++)
+                {
+                    if (buf[i] == '\n')
+                    {
+                        consumer.sentence(buf, start, i);
+                        start = i + 1;
+                    }
+                }
+            };
+    }
+
+    /**
+     * This method writes m sentences to a file, generating them in blocks of SENTENCES_PER_BLOCK on several threads
+     * and writing the blocks in order.
+     */
+    static void writeBlocks(String file_name, long m, int no_of_threads, BlockSource source) throws IOException
+    {
+        try (final OutputStream out = GzipPipe.create(txtFile(file_name)))
+        {
+            generateBlocks(file_name, m, no_of_threads, source, block -> out.write(block.array(), 0, block.limit()));
+        }
+    }
+
+    /**
+     * This method generates m sentences in blocks of SENTENCES_PER_BLOCK on several threads and hands the blocks to a sink in order.
+     */
+    static void generateBlocks(String file_name, long m, int no_of_threads, final BlockSource source, BlockSink sink) throws IOException
+    {
+        Metrics metrics = Metrics.GENERATION;
+        long no_of_blocks = (m + SENTENCES_PER_BLOCK - 1) / SENTENCES_PER_BLOCK;
+        ExecutorService pool = Executors.newFixedThreadPool(no_of_threads);
+        ArrayDeque<Future<ByteBuffer>> in_flight = new ArrayDeque<Future<ByteBuffer>>();
+        try
+        {
+            long next_block = 0;
+            long written = 0;
+            while (next_block < no_of_blocks || !in_flight.isEmpty())
+            {
+                // keep a bounded number of blocks in flight, so memory does not grow with m
+                while (next_block < no_of_blocks && in_flight.size() < 2 * no_of_threads)
+                {
+                    final long first = next_block * SENTENCES_PER_BLOCK;
+                    final long last = Math.min(m, first + SENTENCES_PER_BLOCK);
+                    in_flight.add(pool.submit(() -> source.block(first, last)));
+                    next_block++;
+                }
+                long wait_start = System.nanoTime();
+                ByteBuffer block = in_flight.poll().get();
+                long write_start = System.nanoTime();
+                sink.write(block);
+                long write_end = System.nanoTime();
+                metrics.time(Metrics.WAIT, write_start - wait_start);
+                metrics.latency(Metrics.WAIT, write_start - wait_start);
+                metrics.time(Metrics.WRITE, write_end - write_start);
+                metrics.latency(Metrics.WRITE, write_end - write_start);
+                long block_sentences = Math.min(m - written, SENTENCES_PER_BLOCK);
+                metrics.sentences(block_sentences, block.limit());
+                written += block_sentences;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while generating " + file_name);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException(e.getCause());
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * This method generates the sentences first to last-1 of a labelled dataset, each followed by a tab, its label and the line separator.
+     * @return a buffer holding the lines
+     */
+    static ByteBuffer labelledBlock(Grammar grammar, long seed, double corruption_rate, int kinds, long first, long last, byte[] separator)
+    {
+        long generate_start = System.nanoTime();
+        NegativeExampleGenerator generator = new NegativeExampleGenerator(seed, true, grammar, corruption_rate, kinds);
+        byte[][] labels = new byte[NegativeExampleGenerator.LABELS.length][];
+        int longest_label = 0;
+        for (int i = 0; i < labels.length; i++)
+        {
+            labels[i] = ("\t" + NegativeExampleGenerator.LABELS[i]).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+            longest_label = Math.max(longest_label, labels[i].length);
+        }
+        byte[] buf = new byte[(int) (last - first) * (generator.maxSentenceLength() + longest_label + separator.length)];
+        int pos = 0;
+        for (long i = first; i < last; i++)
+        {
+            pos = generator.sentence(i, buf, pos);
+            for (byte b : labels[generator.label()])
+            {
+                buf[pos++] = b;
+            }
+            for (byte b : separator)
+            {
+                buf[pos++] = b;
+            }
+        }
+        ByteBuffer block = ByteBuffer.wrap(buf);
+        block.limit(pos);
+        long generate_time = System.nanoTime() - generate_start;
+        Metrics.GENERATION.time(Metrics.GENERATE, generate_time);
+        Metrics.GENERATION.latency(Metrics.GENERATE, generate_time);
+        return block;
+    }
+
+    /**
+     * This method gives the file toFile writes to: file_name + ".txt", or, if file_name ends with .gz, the compressed file
+     * file_name without .gz + ".txt.gz".
+     */
+    static File txtFile(String file_name)
+    {
+        if (file_name.endsWith(".gz"))
+        {
+            return new File(file_name.substring(0, file_name.length() - 3) + ".txt.gz");
+        }
+        return new File(file_name + ".txt");
+    }
+
+    /**
+     * This method generates the sentences first to last-1 of a dataset, each followed by the line separator.
+     * @return a buffer holding the sentences
+     */
+    static ByteBuffer block(Grammar grammar, long seed, long first, long last, byte[] separator)
+    {
+        long generate_start = System.nanoTime();
+        SentenceGenerator generator = grammar.generator(seed, true);
+        byte[] buf = new byte[(int) (last - first) * (generator.maxSentenceLength() + separator.length)];
+        int pos = 0;
+        for (long i = first; i < last; i++)
+        {
+            pos = generator.sentence(i, buf, pos);
+            for (byte b : separator)
+            {
+                buf[pos++] = b;
+            }
+        }
+        ByteBuffer block = ByteBuffer.wrap(buf);
+        block.limit(pos);
+        long generate_time = System.nanoTime() - generate_start;
+        Metrics.GENERATION.time(Metrics.GENERATE, generate_time);
+        Metrics.GENERATION.latency(Metrics.GENERATE, generate_time);
+        return block;
+    }
 }
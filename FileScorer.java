@@ -0,0 +1,715 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+/**
+ * A class that scores whole generation files at the byte level.
+ * The file is read through large NIO buffers and split into lines without decoding them into Strings. Every line is then judged
+ * directly on its ASCII bytes by the BNFAutomaton, so that scoring large sample dumps is limited by the disk rather than by the parser.
+ *
+ * Lines are treated like the Scanner in the file evaluators treats them: they end at "\n" or "\r\n", and the last character of every
+ * line (the space symbol) is cropped before judging. An empty line is counted as a bad generation.
+ *
+ * Large files can be scored in parallel: the file is cut into newline-aligned chunks, which are validated on a fork-join pool.
+ * The counts and bad lines of the chunks are merged in file order, so the result does not depend on the number of threads.
+ * Other passes over a file (e.g. RepairScorer, CorpusStatistics) are cut into chunks the same way by reduceChunks.
+ * Progress (lines, bytes, judgements, read and parse time) is counted in Metrics.SCORING.
+ *
+ * With -Dverdict.cache=n, lines are judged through a shared VerdictCache of n slots rounded up to a power of two (at most 2^30),
+ * so repeated lines are not parsed again.
+ *
+ * Gzip-compressed files (e.g. gen.txt.gz) are read transparently: they are decompressed by a GzipPipe on a thread of its own,
+ * while the lines are judged. A compressed file cannot be cut into chunks, so it is always scored on one thread.
+ *
+ * @author Tisha Anders
+ */
+public class FileScorer
+{
+    static final int BUFFER_SIZE = 1 << 20;
+    static final long MIN_CHUNK_SIZE = 4L << 20;
+    static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Receives the lines of a file, one at a time. The bytes of a line are only valid during the call.
+     */
+    public interface LineConsumer
+    {
+        /**
+         * @param buf the buffer holding the line
+         * @param from index of the first byte of the line
+         * @param to index after the last byte of the line, excluding the line terminator
+         * @param offset position of the first byte of the line in the file
+         */
+        void line(byte[] buf, int from, int to, long offset) throws IOException;
+    }
+
+    /**
+     * A source of bytes for forEachLine: a range of a file channel or a stream.
+     */
+    interface Source
+    {
+        /**
+         * @return the number of bytes read into buf, or -1 at the end of the source
+         */
+        int read(byte[] buf, int off, int len) throws IOException;
+    }
+
+    /**
+     * Counts of tested generations, generations with correct word order and generations that are fully correct.
+     */
+    public static class Tally
+    {
+        public long no_of_tested_gens;
+        public long no_of_good_order_gens;
+        public long no_of_good_gens;
+
+        /**
+         * This method counts one judgement.
+         * @param judgement BNFAutomaton.GOOD, BAD_AGREEMENT or BAD_WORD_ORDER
+         */
+        public void add(int judgement)
+        {
+            no_of_tested_gens++;
+            if (judgement != BNFAutomaton.BAD_WORD_ORDER)
+            {
+                no_of_good_order_gens++;
+                if (judgement == BNFAutomaton.GOOD)
+                {
+                    no_of_good_gens++;
+                }
+            }
+        }
+
+        /**
+         * This method adds the counts of another tally to this one.
+         * @param other the tally to be added
+         */
+        public void add(Tally other)
+        {
+            no_of_tested_gens += other.no_of_tested_gens;
+            no_of_good_order_gens += other.no_of_good_order_gens;
+            no_of_good_gens += other.no_of_good_gens;
+        }
+
+        /**
+         * @return percentage of generations with correct word order
+         */
+        public double wordOrderPercentage()
+        {
+            double percentage = no_of_good_order_gens * Math.pow(no_of_tested_gens, -1);
+            return percentage*100;
+        }
+
+        /**
+         * @return percentage of generations with correct word order & agreement
+         */
+        public double percentage()
+        {
+            double percentage = no_of_good_gens * Math.pow(no_of_tested_gens, -1);
+            return percentage*100;
+        }
+    }
+
+    /**
+     * The result of scoring a file in parallel: the counts and the numbers of all bad lines (counting from 0), in file order.
+     */
+    public static class Report
+    {
+        public final Tally tally;
+        public final long[] bad_lines;
+
+        Report(Tally tally, long[] bad_lines)
+        {
+            this.tally = tally;
+            this.bad_lines = bad_lines;
+        }
+    }
+
+    /**
+     * The counts and bad lines of one chunk. Line numbers are counted from the start of the chunk until the chunks are merged.
+     */
+    static class Chunk
+    {
+        final Tally tally = new Tally();
+        // false for a tally of the lines only, e.g. for TailEvaluator, which never reads the bad lines
+        final boolean keep_bad_lines;
+        long[] bad_lines = new long[16];
+        int no_of_bad_lines = 0;
+        long no_of_lines = 0;
+
+        Chunk()
+        {
+            this(true);
+        }
+
+        Chunk(boolean keep_bad_lines)
+        {
+            this.keep_bad_lines = keep_bad_lines;
+        }
+
+        void addBadLine(long line_no)
+        {
+            if (no_of_bad_lines == bad_lines.length)
+            {
+                bad_lines = java.util.Arrays.copyOf(bad_lines, bad_lines.length * 2);
+            }
+            bad_lines[no_of_bad_lines++] = line_no;
+        }
+
+        /**
+         * This method appends a chunk that follows this one in the file.
+         */
+        Chunk append(Chunk other)
+        {
+            tally.add(other.tally);
+            for (int i = 0; i < other.no_of_bad_lines; i++)
+            {
+                addBadLine(no_of_lines + other.bad_lines[i]);
+            }
+            no_of_lines += other.no_of_lines;
+            return this;
+        }
+    }
+
+    /**
+     * This task reduces a range of chunks, splitting it in halves until a single chunk is left. A chunk is read into a fresh result,
+     * and the results of neighbouring chunks are merged in file order.
+     */
+    static class ChunkTask<T> extends RecursiveTask<T>
+    {
+        private static final long serialVersionUID = 1L;
+
+        final FileChannel channel;
+        final long[] boundaries;
+        final int lo;
+        final int hi;
+        final Metrics metrics;
+        final Supplier<T> create;
+        final Function<T, LineConsumer> consumer;
+        final BinaryOperator<T> merge;
+
+        ChunkTask(FileChannel channel, long[] boundaries, int lo, int hi, Metrics metrics, Supplier<T> create, Function<T, LineConsumer> consumer, BinaryOperator<T> merge)
+        {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.lo = lo;
+            this.hi = hi;
+            this.metrics = metrics;
+            this.create = create;
+            this.consumer = consumer;
+            this.merge = merge;
+        }
+
+        protected T compute()
+        {
+            if (hi - lo > 1)
+            {
+                int mid = (lo + hi) >>> 1;
+                ChunkTask<T> right = new ChunkTask<T>(channel, boundaries, mid, hi, metrics, create, consumer, merge);
+                right.fork();
+                T left = new ChunkTask<T>(channel, boundaries, lo, mid, metrics, create, consumer, merge).compute();
+                return merge.apply(left, right.join());
+            }
+            T result = create.get();
+            try
+            {
+                forEachLine(channel, boundaries[lo], boundaries[hi], metrics, consumer.apply(result));
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * This method opens a file for reading. Like the Scanner, it throws a FileNotFoundException if the file is missing.
+     * @param file the file
+     * @return a channel on the file
+     */
+    static FileChannel open(File file) throws FileNotFoundException
+    {
+        return new FileInputStream(file).getChannel();
+    }
+
+    /**
+     * This method gives the file the file evaluators read for a file name: filename + ".txt", or, if only a compressed copy
+     * exists, filename + ".txt.gz".
+     * @param filename the file name, excluding .txt
+     * @return the file to be read
+     */
+    static File txtFile(String filename)
+    {
+        File file = new File(filename + ".txt");
+        if (!file.exists())
+        {
+            File compressed = new File(filename + ".txt.gz");
+            if (compressed.exists())
+            {
+                return compressed;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * This method gives a consumer that judges every line and counts it, with its number if it is bad, in a chunk.
+     */
+    static LineConsumer judging(final Chunk chunk)
+    {
+        return (buf, from, to, offset) -> {
+                int judgement = judgeLine(buf, from, to, Metrics.SCORING);
+                chunk.tally.add(judgement);
+                if (judgement != BNFAutomaton.GOOD && chunk.keep_bad_lines)
+                {
+                    chunk.addBadLine(chunk.no_of_lines);
+                }
+                chunk.no_of_lines++;
+            };
+    }
+
+    /**
+     * This method judges one line (word order & agreement), cropping its last character first. It does not count the judgement
+     * in any Metrics.
+     * @param buf the buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index after the last byte of the line
+     * @return BNFAutomaton.GOOD, BAD_AGREEMENT or BAD_WORD_ORDER
+     */
+    public static int judgeLine(byte[] buf, int from, int to)
+    {
+        to = cropLastCharacter(buf, from, to);
+        if (to <= from)
+        {
+            return BNFAutomaton.BAD_WORD_ORDER;
+        }
+        VerdictCache cache = VerdictCache.SHARED;
+        return cache != null ? cache.judge(buf, from, to) : judge(buf, from, to);
+    }
+
+    /**
+     * This method judges one line like judgeLine(buf, from, to) and counts the judgement in a Metrics. It is meant for the passes
+     * that count their lines in the same Metrics, so that its judgements and its sentences stay in step.
+     * @param metrics counts the judgement
+     * @return BNFAutomaton.GOOD, BAD_AGREEMENT or BAD_WORD_ORDER
+     */
+    static int judgeLine(byte[] buf, int from, int to, Metrics metrics)
+    {
+        int judgement = judgeLine(buf, from, to);
+        metrics.judged(judgement);
+        return judgement;
+    }
+
+    /**
+     * This method judges a sentence (word order & agreement) in one pass through the BNFAutomaton, or by the reference parsers
+     * if it contains lowercase rule symbols.
+     * @return BNFAutomaton.GOOD, BAD_AGREEMENT or BAD_WORD_ORDER
+     */
+    static int judge(byte[] buf, int from, int to)
+    {
+        int judgement = BNFAutomaton.judge(buf, from, to);
+        if (judgement == BNFAutomaton.UNDECIDED)
+        {
+            judgement = AgreementandBNFParser.fastJudgement(new String(buf, from, to - from, Charset.defaultCharset()));
+        }
+        return judgement;
+    }
+
+    /**
+     * This method removes the last character of a line, i.e. one byte or one multi-byte UTF-8 sequence.
+     * @return the new end of the line
+     */
+    static int cropLastCharacter(byte[] buf, int from, int to)
+    {
+        if (to <= from)
+        {
+            return from;
+        }
+        to--;
+        while (to > from && (buf[to] & 0xC0) == 0x80)
+        {
+            to--;
+        }
+        return to;
+    }
+
+    /**
+     * This method scores every line of a file.
+     * @param file the file to be examined
+     * @return the counts of tested, well-ordered and correct generations
+     */
+    public static Tally score(File file) throws IOException
+    {
+        final Tally tally = new Tally();
+        forEachLine(file, Metrics.SCORING, (buf, from, to, offset) -> tally.add(judgeLine(buf, from, to, Metrics.SCORING)));
+        return tally;
+    }
+
+    /**
+     * This method scores the file that the file evaluators would read, i.e. filename + ".txt" or filename + ".txt.gz".
+     * It keeps their signature: a missing file gives a FileNotFoundException, any other read error an UncheckedIOException.
+     * @param filename the file to be examined, excluding .txt
+     * @return the counts of tested, well-ordered and correct generations
+     */
+    static Tally scoreTxt(String filename) throws FileNotFoundException
+    {
+        try
+        {
+            return score(txtFile(filename));
+        }
+        catch (FileNotFoundException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * This method scores every line of a file on several threads.
+     * @param file the file to be examined
+     * @param no_of_threads the number of threads to use
+     * @return the counts and the numbers of the bad lines, the same for any number of threads
+     */
+    public static Report scoreParallel(File file, int no_of_threads) throws IOException
+    {
+        if (GzipPipe.isGzip(file))
+        {
+            Chunk all = scoreCompressed(file);
+            return new Report(all.tally, java.util.Arrays.copyOf(all.bad_lines, all.no_of_bad_lines));
+        }
+        try (FileChannel channel = open(file))
+        {
+            Chunk all = scoreRange(channel, 0, channel.size(), no_of_threads, true);
+            return new Report(all.tally, java.util.Arrays.copyOf(all.bad_lines, all.no_of_bad_lines));
+        }
+    }
+
+    /**
+     * This method counts the judgements of the lines between two positions of a file on several threads, without keeping the
+     * numbers of the bad lines.
+     * @return the counts of the range; every line is counted as a tested generation
+     */
+    static Tally tallyRange(FileChannel channel, long from, long to, int no_of_threads) throws IOException
+    {
+        return scoreRange(channel, from, to, no_of_threads, false).tally;
+    }
+
+    /**
+     * This method scores the lines between two positions of a file on several threads.
+     * @param channel the file
+     * @param from position of the first line
+     * @param to position after the last line
+     * @param no_of_threads the number of threads to use
+     * @param keep_bad_lines whether to keep the numbers of the bad lines
+     * @return the counts and bad lines of the range, counting lines from its start
+     */
+    static Chunk scoreRange(FileChannel channel, long from, long to, int no_of_threads, final boolean keep_bad_lines) throws IOException
+    {
+        return reduceRange(channel, from, to, no_of_threads, Metrics.SCORING, () -> new Chunk(keep_bad_lines), FileScorer::judging, Chunk::append);
+    }
+
+    /**
+     * This method reads every line of a file into results of one chunk each, on several threads, and merges them in file order.
+     * A gzip-compressed file cannot be cut into chunks: it is read into a single result on one thread. The lines are not counted
+     * in any Metrics.
+     * @param file the file
+     * @param no_of_threads the number of threads to use
+     * @param create makes an empty result
+     * @param consumer gives the consumer that reads the lines of a chunk into its result
+     * @param merge merges the result of a chunk with that of the chunk after it
+     * @return the merged result
+     */
+    static <T> T reduceChunks(File file, int no_of_threads, Supplier<T> create, Function<T, LineConsumer> consumer, BinaryOperator<T> merge) throws IOException
+    {
+        if (GzipPipe.isGzip(file))
+        {
+            T result = create.get();
+            forEachLine(file, consumer.apply(result));
+            return result;
+        }
+        try (FileChannel channel = open(file))
+        {
+            return reduceRange(channel, 0, channel.size(), no_of_threads, null, create, consumer, merge);
+        }
+    }
+
+    /**
+     * This method reads the lines between two positions of a file into results of one chunk each, on several threads, and merges
+     * them in file order. A range of a single chunk is read on the calling thread. Called from a task of a fork-join pool, it reads
+     * the chunks on that pool.
+     * @param metrics counts the lines, bytes, read and parse time, or null
+     * @return the merged result
+     */
+    static <T> T reduceRange(FileChannel channel, long from, long to, int no_of_threads, Metrics metrics, Supplier<T> create, Function<T, LineConsumer> consumer, BinaryOperator<T> merge) throws IOException
+    {
+        long[] boundaries = chunkBoundaries(channel, from, to, chunkSize(to - from, no_of_threads));
+        if (boundaries.length == 2)
+        {
+            T result = create.get();
+            forEachLine(channel, from, to, metrics, consumer.apply(result));
+            return result;
+        }
+        ChunkTask<T> task = new ChunkTask<T>(channel, boundaries, 0, boundaries.length - 1, metrics, create, consumer, merge);
+        // e.g. for a file of BatchEvaluator, the chunks share the pool of the files
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? null : new ForkJoinPool(no_of_threads);
+        try
+        {
+            return pool != null ? pool.invoke(task) : task.invoke();
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+        finally
+        {
+            if (pool != null)
+            {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * This method gives the size of the chunks a range of a file is cut into: CHUNKS_PER_THREAD chunks per thread, so that the
+     * threads stay busy when some chunks are slower, but not less than MIN_CHUNK_SIZE bytes.
+     * @param length the number of bytes of the range
+     * @param no_of_threads the number of threads to use
+     * @return the size of a chunk in bytes
+     */
+    static long chunkSize(long length, int no_of_threads)
+    {
+        return Math.max(MIN_CHUNK_SIZE, length / ((long) no_of_threads * CHUNKS_PER_THREAD) + 1);
+    }
+
+    /**
+     * This method scores every line of a gzip-compressed file, on one thread.
+     * @return the counts and bad lines of the whole file
+     */
+    static Chunk scoreCompressed(File file) throws IOException
+    {
+        Chunk all = new Chunk();
+        forEachLine(file, Metrics.SCORING, judging(all));
+        return all;
+    }
+
+    /**
+     * This method cuts a file into chunks of about chunk_size bytes, moving every cut to the start of the next line.
+     * @return the positions of the cuts, starting with 0 and ending with the size of the file
+     */
+    static long[] chunkBoundaries(FileChannel channel, long size, long chunk_size) throws IOException
+    {
+        return chunkBoundaries(channel, 0, size, chunk_size);
+    }
+
+    /**
+     * This method cuts the range of a file between two positions into newline-aligned chunks of about chunk_size bytes.
+     * @return the positions of the cuts, starting with from and ending with to
+     */
+    static long[] chunkBoundaries(FileChannel channel, long from, long size, long chunk_size) throws IOException
+    {
+        long[] boundaries = new long[(int) ((size - from) / chunk_size) + 2];
+        int k = 0;
+        boundaries[k++] = from;
+        ByteBuffer bb = ByteBuffer.allocate(4096);
+        long position = from + chunk_size;
+        while (position < size)
+        {
+            // the chunk starts after the first newline at or behind position-1
+            long cut = -1;
+            long search = position - 1;
+            while (cut < 0 && search < size)
+            {
+                bb.clear();
+                int n = channel.read(bb, search);
+                if (n <= 0)
+                {
+                    break;
+                }
+                for (int i = 0; i < n; i++)
+                {
+                    if (bb.get(i) == '\n')
+                    {
+                        cut = search + i + 1;
+                        break;
+                    }
+                }
+                search += n;
+            }
+            if (cut < 0 || cut >= size)
+            {
+                break;
+            }
+            boundaries[k++] = cut;
+            position = Math.max(cut, position) + chunk_size;
+        }
+        boundaries[k++] = size;
+        return java.util.Arrays.copyOf(boundaries, k);
+    }
+
+    /**
+     * This method reads the bytes from position from up to position to of a file in large blocks and hands every line to a consumer,
+     * without counting them in any Metrics.
+     */
+    public static long forEachLine(FileChannel channel, long from, long to, LineConsumer consumer) throws IOException
+    {
+        return forEachLine(channel, from, to, null, consumer);
+    }
+
+    /**
+     * This method reads the bytes from position from up to position to of a file in large blocks and hands every line to a consumer.
+     * A line that is cut off by to is still handed over as a whole line.
+     * @param channel the file
+     * @param from position of the first line
+     * @param to position after the last line
+     * @param metrics counts the lines, bytes, read and parse time, or null
+     * @param consumer receives the lines
+     * @return the number of lines
+     */
+    public static long forEachLine(final FileChannel channel, long from, final long to, Metrics metrics, LineConsumer consumer) throws IOException
+    {
+        final long[] next = {from}; // position of the next byte to be read
+        Source source = (buf, off, len) -> {
+                if (next[0] >= to)
+                {
+                    return -1;
+                }
+                int n = channel.read(ByteBuffer.wrap(buf, off, (int) Math.min(len, to - next[0])), next[0]);
+                if (n > 0)
+                {
+                    next[0] += n;
+                }
+                return n;
+            };
+        return forEachLine(source, from, (int) Math.min(BUFFER_SIZE, Math.max(to - from, 16)), metrics, consumer);
+    }
+
+    /**
+     * This method hands every line of a file to a consumer, without counting them in any Metrics.
+     */
+    public static long forEachLine(File file, LineConsumer consumer) throws IOException
+    {
+        return forEachLine(file, null, consumer);
+    }
+
+    /**
+     * This method hands every line of a file to a consumer, decompressing the file on another thread if it is gzip-compressed.
+     * @param file the file
+     * @param metrics counts the lines, bytes, read and parse time, or null
+     * @param consumer receives the lines; their offsets are positions in the (decompressed) text
+     * @return the number of lines
+     */
+    public static long forEachLine(File file, Metrics metrics, LineConsumer consumer) throws IOException
+    {
+        if (GzipPipe.isGzip(file))
+        {
+            try (final InputStream in = GzipPipe.open(file))
+            {
+                return forEachLine(in::read, 0, BUFFER_SIZE, metrics, consumer);
+            }
+        }
+        try (FileChannel channel = open(file))
+        {
+            return forEachLine(channel, 0, channel.size(), metrics, consumer);
+        }
+    }
+
+    /**
+     * This method reads a source in large blocks and hands every line to a consumer.
+     * @param source the bytes
+     * @param from position of the first byte of the source
+     * @param buffer_size the initial size of the buffer; it grows for longer lines
+     * @param metrics counts the lines, bytes, read and parse time, or null; only the scoring entry points pass Metrics.SCORING
+     * @param consumer receives the lines
+     * @return the number of lines
+     */
+    static long forEachLine(Source source, long from, int buffer_size, Metrics metrics, LineConsumer consumer) throws IOException
+    {
+        byte[] buf = new byte[buffer_size];
+        long position = from; // position of buf[0] in the file
+        int filled = 0;
+        int scanned = 0;
+        long no_of_lines = 0;
+        while (true)
+        {
+            long read_start = metrics != null ? System.nanoTime() : 0;
+            int n = source.read(buf, filled, buf.length - filled);
+            long parse_start = metrics != null ? System.nanoTime() : 0;
+            if (metrics != null)
+            {
+                metrics.time(Metrics.READ, parse_start - read_start);
+                metrics.latency(Metrics.READ, parse_start - read_start);
+            }
+            if (n < 0)
+            {
+                if (filled > 0)
+                {
+                    consumer.line(buf, 0, stripCarriageReturn(buf, 0, filled), position);
+                    no_of_lines++;
+                    if (metrics != null)
+                    {
+                        metrics.sentences(1, 0);
+                        metrics.time(Metrics.PARSE, System.nanoTime() - parse_start);
+                    }
+                }
+                return no_of_lines;
+            }
+            filled += n;
+            long lines_before = no_of_lines;
+            int start = 0;
+            for (int i = scanned; i < filled; i++)
+            {
+                if (buf[i] == '\n')
+                {
+                    if (metrics != null && (no_of_lines & Metrics.LATENCY_SAMPLE_MASK) == 0)
+                    {
+                        long line_start = System.nanoTime();
+                        consumer.line(buf, start, stripCarriageReturn(buf, start, i), position + start);
+                        metrics.latency(Metrics.PARSE, System.nanoTime() - line_start);
+                    }
+                    else
+                    {
+                        consumer.line(buf, start, stripCarriageReturn(buf, start, i), position + start);
+                    }
+                    no_of_lines++;
+                    start = i + 1;
+                }
+            }
+            if (metrics != null)
+            {
+                metrics.sentences(no_of_lines - lines_before, n);
+                metrics.time(Metrics.PARSE, System.nanoTime() - parse_start);
+            }
+            if (start == 0 && filled == buf.length)
+            {
+                buf = java.util.Arrays.copyOf(buf, buf.length * 2); // a line longer than the buffer
+            }
+            else
+            {
+                System.arraycopy(buf, start, buf, 0, filled - start);
+                position += start;
+                filled -= start;
+            }
+            scanned = filled;
+        }
+    }
+
+    static int stripCarriageReturn(byte[] buf, int from, int to)
+    {
+        return to > from && buf[to - 1] == '\r' ? to - 1 : to;
+    }
+}
@@ -0,0 +1,400 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+/**
+ * A class that finds out how many generations of the LSTM are verbatim copies of training sentences.
+ * The index is built once over a training set (e.g. written by ExampleBuilder.toFile) and holds a 64-bit fingerprint of every
+ * distinct sentence in an open-addressing table of longs with linear probing, so it needs 8 bytes per slot and no object per sentence.
+ * Two different sentences get the same fingerprint with a probability of about 2^-64 per pair, which is negligible even for
+ * hundreds of millions of sentences.
+ *
+ * A sentence is fingerprinted on its tokens only: spaces, tabs and carriage returns are skipped, so a training line in the dataset
+ * format (intro + space + tab + rel_clauses + outro + space) and the same sentence in a generation file get the same fingerprint.
+ *
+ * The table can be kept on the heap, off the heap (in a direct buffer), or saved to a file and memory-mapped from it later,
+ * so the index of a large training set is built only once. A memory-mapped index is read-only.
+ *
+ * Scoring a generation file gives the accuracy of the file evaluators together with the copy rate (generations that occur in the
+ * training set) and the novel-and-grammatical rate (generations that are correct and do not occur in the training set).
+ *
+ * Usage: java FingerprintIndex [--save index-file | --index index-file] [training-file] generation-file ...
+ *
+ * @author Tisha Anders
+ */
+public class FingerprintIndex
+{
+    static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    static final long FNV_PRIME = 0x100000001B3L;
+    static final long MAGIC = 0x3158444E49504621L; // "!FPINDX1", little-endian
+    static final int HEADER_SIZE = 32;
+    static final int INITIAL_CAPACITY = 1 << 16;
+    // the table is mapped in one piece, so it must stay below 2 GB
+    static final int MAX_CAPACITY = 1 << 27;
+    // the table grows when it is three quarters full
+    static final int MAX_LOAD_PERCENT = 75;
+
+    final boolean off_heap;
+    final boolean read_only;
+    LongBuffer table;
+    int mask;
+    long size;
+
+    /**
+     * This constructor makes an empty index.
+     * @param off_heap whether to keep the table in a direct buffer
+     */
+    public FingerprintIndex(boolean off_heap)
+    {
+        this.off_heap = off_heap;
+        this.read_only = false;
+        table = allocate(INITIAL_CAPACITY);
+        mask = INITIAL_CAPACITY - 1;
+    }
+
+    FingerprintIndex(LongBuffer table, long size)
+    {
+        this.off_heap = true;
+        this.read_only = true;
+        this.table = table;
+        this.mask = table.capacity() - 1;
+        this.size = size;
+    }
+
+    LongBuffer allocate(int capacity)
+    {
+        if (off_heap)
+        {
+            return ByteBuffer.allocateDirect(capacity * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+        return LongBuffer.allocate(capacity);
+    }
+
+    /**
+     * This method computes the fingerprint of a sentence: FNV-1a over its tokens, skipping spaces, tabs and carriage returns,
+     * followed by the finaliser of SplitMix64. The fingerprint is never 0, which marks an empty slot.
+     * @param buf the buffer holding the sentence
+     * @param from index of the first byte
+     * @param to index after the last byte
+     * @return the fingerprint
+     */
+    public static long fingerprint(byte[] buf, int from, int to)
+    {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = from; i < to; i++)
+        {
+            h = step(h, buf[i]);
+        }
+        return finish(h);
+    }
+
+    /**
+     * @return whether a byte is left out of the fingerprint, i.e. is a space, a tab or a carriage return
+     */
+    static boolean skipped(byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * This method feeds the next byte of a sentence into an unfinished fingerprint, which starts as FNV_OFFSET_BASIS.
+     * @return the unfinished fingerprint, unchanged for a skipped byte
+     */
+    static long step(long h, byte b)
+    {
+        return skipped(b) ? h : (h ^ (b & 0xFF)) * FNV_PRIME;
+    }
+
+    /**
+     * This method finishes a fingerprint after the last byte of a sentence.
+     * @return the fingerprint, never 0
+     */
+    static long finish(long h)
+    {
+        h = SentenceGenerator.mix(h);
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * This method adds a fingerprint to the index.
+     * @return whether the fingerprint was new
+     */
+    public boolean add(long fingerprint)
+    {
+        if (read_only)
+        {
+            throw new IllegalStateException("a memory-mapped index is read-only");
+        }
+        if ((size + 1) * 100 > (long) table.capacity() * MAX_LOAD_PERCENT)
+        {
+            grow();
+        }
+        int i = (int) fingerprint & mask;
+        while (true)
+        {
+            long f = table.get(i);
+            if (f == 0)
+            {
+                table.put(i, fingerprint);
+                size++;
+                return true;
+            }
+            if (f == fingerprint)
+            {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * @return whether the fingerprint is in the index
+     */
+    public boolean contains(long fingerprint)
+    {
+        int i = (int) fingerprint & mask;
+        while (true)
+        {
+            long f = table.get(i);
+            if (f == fingerprint)
+            {
+                return true;
+            }
+            if (f == 0)
+            {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * @return whether the sentence is in the index
+     */
+    public boolean contains(byte[] buf, int from, int to)
+    {
+        return contains(fingerprint(buf, from, to));
+    }
+
+    /**
+     * @return the number of distinct sentences in the index
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    void grow()
+    {
+        int capacity = table.capacity() * 2;
+        if (capacity > MAX_CAPACITY)
+        {
+            throw new IllegalStateException("too many sentences for the index: " + size);
+        }
+        LongBuffer old = table;
+        table = allocate(capacity);
+        mask = capacity - 1;
+        for (int i = 0; i < old.capacity(); i++)
+        {
+            long f = old.get(i);
+            if (f != 0)
+            {
+                int j = (int) f & mask;
+                while (table.get(j) != 0)
+                {
+                    j = (j + 1) & mask;
+                }
+                table.put(j, f);
+            }
+        }
+    }
+
+    /**
+     * This method builds the index of a training set, which may be gzip-compressed.
+     * @param training_set the file holding one sentence per line
+     * @param off_heap whether to keep the table in a direct buffer
+     * @return the index
+     */
+    public static FingerprintIndex build(File training_set, boolean off_heap) throws IOException
+    {
+        final FingerprintIndex index = new FingerprintIndex(off_heap);
+        FileScorer.forEachLine(training_set, (buf, from, to, offset) -> index.add(fingerprint(buf, from, to)));
+        return index;
+    }
+
+    /**
+     * This method saves the index to a file: a header (magic number, number of sentences, number of slots) and the table,
+     * all little-endian.
+     */
+    public void save(File file) throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel())
+        {
+            raf.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC).putLong(size).putLong(table.capacity()).putLong(0);
+            header.flip();
+            while (header.hasRemaining())
+            {
+                channel.write(header);
+            }
+            ByteBuffer bb = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < table.capacity(); i++)
+            {
+                if (!bb.hasRemaining())
+                {
+                    bb.flip();
+                    while (bb.hasRemaining())
+                    {
+                        channel.write(bb);
+                    }
+                    bb.clear();
+                }
+                bb.putLong(table.get(i));
+            }
+            bb.flip();
+            while (bb.hasRemaining())
+            {
+                channel.write(bb);
+            }
+        }
+    }
+
+    /**
+     * This method memory-maps an index saved by save, so it is ready at once and shared with other processes through the page cache.
+     * @return a read-only index
+     */
+    public static FingerprintIndex load(File file) throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel())
+        {
+            if (raf.length() < HEADER_SIZE)
+            {
+                throw new IOException(file + " is not a fingerprint index");
+            }
+            byte[] bytes = new byte[HEADER_SIZE];
+            raf.readFully(bytes);
+            ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getLong() != MAGIC)
+            {
+                throw new IOException(file + " is not a fingerprint index");
+            }
+            long size = header.getLong();
+            long capacity = header.getLong();
+            if (capacity > MAX_CAPACITY || Long.bitCount(capacity) != 1 || channel.size() != HEADER_SIZE + capacity * 8)
+            {
+                throw new IOException(file + " is damaged");
+            }
+            LongBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, capacity * 8)
+                .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            return new FingerprintIndex(table, size);
+        }
+    }
+
+    /**
+     * The accuracy, copies and novel correct generations of a generation file.
+     */
+    public static class Report
+    {
+        public final FileScorer.Tally tally = new FileScorer.Tally();
+        public long no_of_copies;
+        public long no_of_novel_good;
+
+        /**
+         * @return percentage of generations that occur in the training set
+         */
+        public double copyPercentage()
+        {
+            return no_of_copies * Math.pow(tally.no_of_tested_gens, -1) * 100;
+        }
+
+        /**
+         * @return percentage of generations that are correct (word order & agreement) and do not occur in the training set
+         */
+        public double novelGoodPercentage()
+        {
+            return no_of_novel_good * Math.pow(tally.no_of_tested_gens, -1) * 100;
+        }
+
+        public String toString()
+        {
+            return String.format(Locale.ROOT, "%d generations, word order %.2f%%, word order & agreement %.2f%%, copies %.2f%%, novel & correct %.2f%%",
+                    tally.no_of_tested_gens, tally.wordOrderPercentage(), tally.percentage(), copyPercentage(), novelGoodPercentage());
+        }
+    }
+
+    /**
+     * This method scores every line of a generation file, like the file evaluators, and looks it up in the index.
+     * Like the file evaluators, it crops the last character of every line first.
+     * @param generations the file to be examined
+     * @return the accuracy, copies and novel correct generations
+     */
+    public Report score(File generations) throws IOException
+    {
+        final Report report = new Report();
+        FileScorer.forEachLine(generations, Metrics.SCORING, (buf, from, to, offset) -> {
+                int judgement = FileScorer.judgeLine(buf, from, to, Metrics.SCORING);
+                report.tally.add(judgement);
+                int end = FileScorer.cropLastCharacter(buf, from, to);
+                if (end > from && contains(buf, from, end))
+                {
+                    report.no_of_copies++;
+                }
+                else if (judgement == BNFAutomaton.GOOD)
+                {
+                    report.no_of_novel_good++;
+                }
+            });
+        return report;
+    }
+
+    /**
+     * This method indexes a training set (or loads a saved index) and scores the generation files given on the command line.
+     * @param args [--save index-file | --index index-file] [training-file] generation-file ...
+     */
+    public static void main(String[] args) throws IOException
+    {
+        String save = null;
+        String saved_index = null;
+        int i = 0;
+        while (i + 1 < args.length && args[i].startsWith("--"))
+        {
+            if (args[i].equals("--save"))
+            {
+                save = args[i + 1];
+            }
+            else if (args[i].equals("--index"))
+            {
+                saved_index = args[i + 1];
+            }
+            i += 2;
+        }
+        if (saved_index == null && i >= args.length)
+        {
+            System.err.println("usage: java FingerprintIndex [--save index-file | --index index-file] [training-file] generation-file ...");
+            return;
+        }
+        FingerprintIndex index;
+        if (saved_index != null)
+        {
+            index = load(new File(saved_index));
+        }
+        else
+        {
+            index = build(new File(args[i++]), true);
+        }
+        System.out.println("training set: " + index.size() + " distinct sentences");
+        if (save != null)
+        {
+            index.save(new File(save));
+        }
+        for (; i < args.length; i++)
+        {
+            System.out.println(args[i] + ": " + index.score(new File(args[i])));
+        }
+    }
+}
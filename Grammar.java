@@ -0,0 +1,260 @@
+/**
+ * A class that holds the bounds of the grammar in one place: the number of relative clauses and the number of Ds, Ps, Ns and Vs in a word.
+ * The feature inventories are fixed by the tokens: A/B for animacy and S/T for number.
+ * Everything that depends on the bounds is derived from a Grammar and compiled once, when it is first needed:
+ * the BNFAutomaton (recognizer), the rule matrix of BNFParser and the bounds of the SentenceGenerator.
+ * Grammar.DEFAULT is the grammar described in BNFParser; larger grammars (e.g. 16 clauses, longer words) can be used for stress tests.
+ *
+ * @author Tisha Anders
+ */
+public class Grammar
+{
+    // the grammar of BNFParser: 1 to 4 relative clauses, 0 to 3 Ds, 0 to 2 Ps, 1 to 9 Ns and 1 to 5 Vs
+    public static final Grammar DEFAULT = new Grammar(1, 4, 0, 3, 0, 2, 1, 9, 1, 5);
+
+    final int min_clauses;
+    final int max_clauses;
+    final int min_d;
+    final int max_d;
+    final int min_p;
+    final int max_p;
+    final int min_n;
+    final int max_n;
+    final int min_v;
+    final int max_v;
+
+    // compiled when first needed
+    private volatile BNFAutomaton automaton;
+    private volatile String[][] rules;
+
+    /**
+     * @param max_clauses the largest number of relative clauses, at least 1
+     * @param max_d the largest number of Ds in a determiner
+     * @param max_p the largest number of Ps in an adjective
+     * @param max_n the largest number of Ns in a noun, at least 1
+     * @param max_v the largest number of Vs in a verb, at least 1
+     */
+    public Grammar(int max_clauses, int max_d, int max_p, int max_n, int max_v)
+    {
+        this(1, max_clauses, 0, max_d, 0, max_p, 1, max_n, 1, max_v);
+    }
+
+    /**
+     * @param min_clauses the smallest number of relative clauses, at least 1
+     * @param max_clauses the largest number of relative clauses
+     * @param min_d the smallest number of Ds in a determiner (0: the determiner is optional)
+     * @param max_d the largest number of Ds in a determiner
+     * @param min_p the smallest number of Ps in an adjective (0: the adjective is optional)
+     * @param max_p the largest number of Ps in an adjective
+     * @param min_n the smallest number of Ns in a noun, at least 1
+     * @param max_n the largest number of Ns in a noun
+     * @param min_v the smallest number of Vs in a verb, at least 1
+     * @param max_v the largest number of Vs in a verb
+     */
+    public Grammar(int min_clauses, int max_clauses, int min_d, int max_d, int min_p, int max_p, int min_n, int max_n, int min_v, int max_v)
+    {
+        check("clauses", min_clauses, max_clauses, 1);
+        check("D", min_d, max_d, 0);
+        check("P", min_p, max_p, 0);
+        check("N", min_n, max_n, 1);
+        check("V", min_v, max_v, 1);
+        if (max_clauses >= BNFAutomaton.OUTRO)
+        {
+            throw new IllegalArgumentException("at most " + (BNFAutomaton.OUTRO - 1) + " clauses are supported");
+        }
+        this.min_clauses = min_clauses;
+        this.max_clauses = max_clauses;
+        this.min_d = min_d;
+        this.max_d = max_d;
+        this.min_p = min_p;
+        this.max_p = max_p;
+        this.min_n = min_n;
+        this.max_n = max_n;
+        this.min_v = min_v;
+        this.max_v = max_v;
+    }
+
+    static void check(String what, int min, int max, int lowest)
+    {
+        if (min < lowest || max < min)
+        {
+            throw new IllegalArgumentException("bad range for " + what + ": " + min + " to " + max);
+        }
+    }
+
+    /**
+     * This method returns the automaton of the grammar, compiling it the first time.
+     * @return the BNFAutomaton
+     */
+    public BNFAutomaton automaton()
+    {
+        BNFAutomaton a = automaton;
+        if (a == null)
+        {
+            synchronized (this)
+            {
+                a = automaton;
+                if (a == null)
+                {
+                    a = this == DEFAULT ? BNFAutomaton.DEFAULT : new BNFAutomaton(this);
+                    automaton = a;
+                }
+            }
+        }
+        return a;
+    }
+
+    /**
+     * This method returns a generator of the sentences of the grammar.
+     * @param seed the seed of the whole set of sentences
+     * @param dataset_format whether to write the space & tab after the intro and the space at the end, as ExampleBuilder does
+     * @return the SentenceGenerator
+     */
+    public SentenceGenerator generator(long seed, boolean dataset_format)
+    {
+        return new SentenceGenerator(seed, dataset_format, this);
+    }
+
+    /**
+     * This method returns an upper bound on the length of a sentence in the dataset format, excluding the line separator.
+     * @return the length of the longest sentence
+     */
+    public int maxSentenceLength()
+    {
+        int noun = max_n + 2;
+        int intro = max_d + max_p + noun + 2;
+        int clause = 3 + max_v + 1 + 2 * max_p + noun;
+        int outro = 1 + max_v + 1 + max_d + max_p + noun + 1;
+        return intro + max_clauses * clause + outro;
+    }
+
+    /**
+     * This function returns the rules of the grammar in the format of BNFParser.parsingmatrix(), generated from the bounds.
+     * The first entry of a row is the LHS of a rule and the subsequent entries are the possibilities for replacement, longest first.
+     * The matrix is built once; BNFparse uses it without copying.
+     * @return String[][] parsingmatrix
+     */
+    String[][] rules()
+    {
+        String[][] r = rules;
+        if (r == null)
+        {
+            r = new String[][] {
+                    {"s", "uxy"},
+                    row("u", optional("d", min_d, max_d), optional("p", min_p, max_p), new String[] {"n"}),
+                    repeat("x", "q", "", min_clauses, max_clauses),
+                    row("q", new String[] {"crv"}, optional("p", min_p, max_p), new String[] {"n"}, optional("p", min_p, max_p)),
+                    row("y", new String[] {"zv"}, optional("d", min_d, max_d), optional("p", min_p, max_p), new String[] {"n"}),
+                    {"c", "C"},
+                    repeat("d", "D", "", Math.max(min_d, 1), max_d),
+                    repeat("p", "P", "", Math.max(min_p, 1), max_p),
+                    repeat("n", "N", "g", min_n, max_n),
+                    {"g", "AS", "AT", "BS", "BT"},
+                    concat(repeat("v", "V", "S", min_v, max_v), repeat("", "V", "T", min_v, max_v)),
+                    {"z", "Z"},
+                    {"r", "RA", "RB"} };
+            rules = r;
+        }
+        return r;
+    }
+
+    /**
+     * @return a copy of the rules of the grammar, in the format of BNFParser.parsingmatrix()
+     */
+    public String[][] parsingmatrix()
+    {
+        String[][] r = rules();
+        String[][] copy = new String[r.length][];
+        for (int i = 0; i < r.length; i++)
+        {
+            copy[i] = r[i].clone();
+        }
+        return copy;
+    }
+
+    // the alternatives for an optional unit: with the unit if it can occur, without it if it can be left out
+    static String[] optional(String unit, int min, int max)
+    {
+        if (max == 0)
+        {
+            return new String[] {""};
+        }
+        return min == 0 ? new String[] {unit, ""} : new String[] {unit};
+    }
+
+    // lhs followed by every combination of the parts, the earlier parts varying slowest
+    static String[] row(String lhs, String[]... parts)
+    {
+        java.util.List<String> options = new java.util.ArrayList<String>();
+        options.add("");
+        for (String[] part : parts)
+        {
+            java.util.List<String> longer = new java.util.ArrayList<String>();
+            for (String option : options)
+            {
+                for (String alternative : part)
+                {
+                    longer.add(option + alternative);
+                }
+            }
+            options = longer;
+        }
+        options.add(0, lhs);
+        return options.toArray(new String[0]);
+    }
+
+    // lhs followed by unit repeated max down to min times, each time followed by tail
+    static String[] repeat(String lhs, String unit, String tail, int min, int max)
+    {
+        String[] row = new String[1 + Math.max(0, max - min + 1)];
+        row[0] = lhs;
+        for (int k = max; k >= min; k--)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < k; i++)
+            {
+                sb.append(unit);
+            }
+            row[1 + max - k] = sb.append(tail).toString();
+        }
+        return row;
+    }
+
+    // a row followed by the options (without the lhs) of another row
+    static String[] concat(String[] row, String[] more)
+    {
+        String[] all = java.util.Arrays.copyOf(row, row.length + more.length - 1);
+        System.arraycopy(more, 1, all, row.length, more.length - 1);
+        return all;
+    }
+
+    /**
+     * This method writes the rules of the grammar in the notation of the header of BNFParser.
+     * @return the BNF, one rule per line
+     */
+    public String bnf()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String[] rule : rules())
+        {
+            sb.append(rule[0]).append(" ->");
+            for (int i = 1; i < rule.length; i++)
+            {
+                sb.append(i > 1 ? " |" : "");
+                for (int j = 0; j < rule[i].length(); j++)
+                {
+                    sb.append(' ').append(rule[i].charAt(j));
+                }
+            }
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Grammar(clauses " + min_clauses + "-" + max_clauses + ", D " + min_d + "-" + max_d + ", P " + min_p + "-" + max_p
+            + ", N " + min_n + "-" + max_n + ", V " + min_v + "-" + max_v + ")";
+    }
+}
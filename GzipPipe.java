@@ -0,0 +1,407 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+/**
+ * A class that reads and writes gzip-compressed generation and dataset files, with the (de)compression on a thread of its own.
+ * The compressed and the plain side exchange blocks of BLOCK_SIZE bytes through two bounded queues (full and free blocks), so
+ * decompression overlaps with parsing and compression with generation, and at most NO_OF_BLOCKS blocks are in memory.
+ *
+ * A file is read as gzip if it starts with the gzip magic number, and written as gzip if its name ends with ".gz".
+ * Other files are read and written directly.
+ *
+ * @author Tisha Anders
+ */
+public class GzipPipe
+{
+    static final int BLOCK_SIZE = 1 << 20;
+    static final int NO_OF_BLOCKS = 4;
+    static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * A block of bytes; a negative length marks the end of the data.
+     */
+    static class Block
+    {
+        final byte[] data;
+        int length;
+
+        Block()
+        {
+            this(BLOCK_SIZE, 0);
+        }
+
+        Block(int size, int length)
+        {
+            data = new byte[size];
+            this.length = length;
+        }
+    }
+
+    // the end of the data after an error or at close, shared by all pipes; it is never refilled or returned to a pool
+    static final Block END = new Block(0, -1);
+
+    /**
+     * This method tells whether a file is gzip-compressed, by its first two bytes.
+     * @param file the file
+     * @return whether the file starts with the gzip magic number
+     */
+    public static boolean isGzip(File file) throws IOException
+    {
+        try (InputStream in = new FileInputStream(file))
+        {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    /**
+     * This method tells whether a file is to be written compressed.
+     * @param file the file
+     * @return whether the name of the file ends with .gz
+     */
+    public static boolean isGzipName(File file)
+    {
+        return file.getName().endsWith(".gz");
+    }
+
+    /**
+     * This method opens a file for reading, decompressing it on another thread if it is gzip-compressed.
+     * @param file the file
+     * @return the plain bytes of the file
+     */
+    public static InputStream open(File file) throws IOException
+    {
+        if (isGzip(file))
+        {
+            return new PipedInput(new GZIPInputStream(new FileInputStream(file), GZIP_BUFFER_SIZE), file.getName());
+        }
+        return new FileInputStream(file);
+    }
+
+    /**
+     * This method creates a file for writing, compressing it on another thread if its name ends with .gz.
+     * @param file the file
+     * @return a stream taking the plain bytes of the file
+     */
+    public static OutputStream create(File file) throws FileNotFoundException
+    {
+        if (isGzipName(file))
+        {
+            return new PipedOutput(new FileOutputStream(file), file.getName());
+        }
+        return new FileOutputStream(file);
+    }
+
+    static Thread daemon(Runnable task, String name)
+    {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * An input stream whose bytes are read (and decompressed) from another stream by a thread of its own.
+     */
+    static class PipedInput extends InputStream
+    {
+        final BlockingQueue<Block> free = new ArrayBlockingQueue<Block>(NO_OF_BLOCKS);
+        final BlockingQueue<Block> full = new ArrayBlockingQueue<Block>(NO_OF_BLOCKS);
+        final Thread reader;
+        volatile IOException error;
+        Block current;
+        int position;
+        boolean ended;
+
+        PipedInput(final InputStream in, String name)
+        {
+            for (int i = 0; i < NO_OF_BLOCKS; i++)
+            {
+                free.add(new Block());
+            }
+            reader = daemon(() -> {
+                    try (InputStream source = in)
+                    {
+                        while (true)
+                        {
+                            Block block = free.take();
+                            block.length = fill(source, block.data);
+                            full.put(block);
+                            if (block.length < 0)
+                            {
+                                return;
+                            }
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        error = e;
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return; // closed by the consumer
+                    }
+                    endOfData();
+                }, "gzip-reader " + name);
+        }
+
+        // after an error: the consumer waits for a block, so give it one that ends the data
+        void endOfData()
+        {
+            full.offer(END);
+        }
+
+        /**
+         * This method reads until a block is full or the stream ends.
+         * @return the number of bytes read, or -1 if the stream had ended
+         */
+        static int fill(InputStream in, byte[] data) throws IOException
+        {
+            int filled = 0;
+            while (filled < data.length)
+            {
+                int n = in.read(data, filled, data.length - filled);
+                if (n < 0)
+                {
+                    break;
+                }
+                filled += n;
+            }
+            return filled == 0 ? -1 : filled;
+        }
+
+        /**
+         * This method makes sure there are bytes left in the current block.
+         * @return false at the end of the data
+         */
+        boolean next() throws IOException
+        {
+            while (!ended && (current == null || position >= current.length))
+            {
+                if (current != null)
+                {
+                    free.offer(current);
+                }
+                try
+                {
+                    current = full.take();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                position = 0;
+                if (current.length < 0)
+                {
+                    ended = true;
+                }
+            }
+            if (ended && error != null)
+            {
+                throw error;
+            }
+            return !ended;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            return next() ? current.data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (!next())
+            {
+                return -1;
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current.data, position, buf, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close()
+        {
+            reader.interrupt();
+        }
+    }
+
+    /**
+     * An output stream whose bytes are written (and compressed) to a file by a thread of its own.
+     */
+    static class PipedOutput extends OutputStream
+    {
+        final BlockingQueue<Block> free = new ArrayBlockingQueue<Block>(NO_OF_BLOCKS);
+        final BlockingQueue<Block> full = new ArrayBlockingQueue<Block>(NO_OF_BLOCKS);
+        final Thread writer;
+        volatile IOException error;
+        Block current;
+        boolean closed;
+
+        PipedOutput(final OutputStream file_out, String name)
+        {
+            for (int i = 0; i < NO_OF_BLOCKS - 1; i++)
+            {
+                free.add(new Block());
+            }
+            current = new Block();
+            writer = daemon(() -> {
+                    OutputStream out = null;
+                    try
+                    {
+                        out = new GZIPOutputStream(file_out, GZIP_BUFFER_SIZE);
+                    }
+                    catch (IOException e)
+                    {
+                        error = e;
+                    }
+                    while (true)
+                    {
+                        Block block;
+                        try
+                        {
+                            block = full.take();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                        if (block.length < 0)
+                        {
+                            break;
+                        }
+                        if (error == null)
+                        {
+                            try
+                            {
+                                out.write(block.data, 0, block.length);
+                            }
+                            catch (IOException e)
+                            {
+                                error = e; // keep taking blocks, so the producer does not block
+                            }
+                        }
+                        free.offer(block);
+                    }
+                    try
+                    {
+                        if (out != null)
+                        {
+                            out.close();
+                        }
+                        else
+                        {
+                            file_out.close();
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        if (error == null)
+                        {
+                            error = e;
+                        }
+                    }
+                }, "gzip-writer " + name);
+        }
+
+        void send(Block block) throws IOException
+        {
+            try
+            {
+                full.put(block);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        void checkError() throws IOException
+        {
+            if (error != null)
+            {
+                throw error;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException
+        {
+            if (closed)
+            {
+                throw new IOException("stream closed");
+            }
+            checkError();
+            while (len > 0)
+            {
+                int n = Math.min(len, BLOCK_SIZE - current.length);
+                System.arraycopy(buf, off, current.data, current.length, n);
+                current.length += n;
+                off += n;
+                len -= n;
+                if (current.length == BLOCK_SIZE)
+                {
+                    send(current);
+                    try
+                    {
+                        current = free.take();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                    current.length = 0;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            if (current.length > 0)
+            {
+                send(current);
+            }
+            send(END);
+            try
+            {
+                writer.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            checkError();
+        }
+    }
+}
@@ -0,0 +1,399 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+/**
+ * A class that instruments long generation and scoring runs, so that their progress, stalls and regressions can be watched
+ * while they run. There is one instance for generation (ExampleBuilder) and one for scoring (FileScorer, and with it the file
+ * evaluators of BNFParser and AgreementandBNFParser).
+ *
+ * Every instance counts sentences, bytes and judgements, and the time spent in every stage:
+ *
+ *  READ (reading the file), PARSE (judging the lines; word order and agreement are checked in the same pass),
+ *  GENERATE (generating blocks of sentences), WAIT (the writer waiting for the next block), WRITE (writing to the file)
+ *
+ * The counters are LongAdders, so the threads of a parallel run do not contend for them. Stage times are measured per buffer or
+ * per block rather than per sentence. Every stage also keeps a latency histogram with power-of-two buckets; lines are sampled
+ * for it (one in LATENCY_SAMPLE_MASK + 1), so timing does not slow down the hot path.
+ *
+ * If the shared VerdictCache is switched on, the scoring metrics also show its hits, misses and evictions.
+ * The counters can be watched with JConsole or VisualVM (JMX, domain "modelling") and/or as periodic lines on System.err.
+ * Both can be switched on without changing code: -Dmetrics.jmx=true and -Dmetrics.log=10 (seconds between log lines).
+ *
+ * @author Tisha Anders
+ */
+public class Metrics implements MetricsMXBean
+{
+    // stages
+    public static final int READ = 0;
+    public static final int PARSE = 1;
+    public static final int GENERATE = 2;
+    public static final int WAIT = 3;
+    public static final int WRITE = 4;
+    static final String[] STAGE_NAMES = {"read", "parse", "generate", "wait", "write"};
+
+    // one in LATENCY_SAMPLE_MASK + 1 lines is timed for the latency histograms
+    static final int LATENCY_SAMPLE_MASK = 63;
+    static final int NO_OF_BUCKETS = 64;
+
+    public static final Metrics GENERATION = new Metrics("generation");
+    public static final Metrics SCORING = new Metrics("scoring");
+
+    static ScheduledExecutorService logger;
+
+    static
+    {
+        if (Boolean.getBoolean("metrics.jmx"))
+        {
+            registerMBeans();
+        }
+        long period = Long.getLong("metrics.log", 0);
+        if (period > 0)
+        {
+            startLogging(period);
+        }
+    }
+
+    final String name;
+    final LongAdder sentences = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+    final LongAdder judged = new LongAdder();
+    final LongAdder good = new LongAdder();
+    final LongAdder bad_agreement = new LongAdder();
+    final LongAdder[] stage_nanos = new LongAdder[STAGE_NAMES.length];
+    final AtomicLongArray[] latency = new AtomicLongArray[STAGE_NAMES.length];
+    volatile long start_nanos = System.nanoTime();
+    // values at the last log line, to print rates over the last period
+    long logged_sentences;
+    long logged_bytes;
+    long logged_nanos = start_nanos;
+
+    Metrics(String name)
+    {
+        this.name = name;
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++)
+        {
+            stage_nanos[stage] = new LongAdder();
+            latency[stage] = new AtomicLongArray(NO_OF_BUCKETS);
+        }
+    }
+
+    /**
+     * This method counts sentences that were read or generated.
+     * @param no_of_sentences the number of sentences
+     * @param no_of_bytes their size in bytes, including line separators
+     */
+    public void sentences(long no_of_sentences, long no_of_bytes)
+    {
+        sentences.add(no_of_sentences);
+        bytes.add(no_of_bytes);
+    }
+
+    /**
+     * This method counts one judgement.
+     * @param judgement BNFAutomaton.GOOD, BAD_AGREEMENT or BAD_WORD_ORDER
+     */
+    public void judged(int judgement)
+    {
+        judged.increment();
+        if (judgement == BNFAutomaton.GOOD)
+        {
+            good.increment();
+        }
+        else if (judgement == BNFAutomaton.BAD_AGREEMENT)
+        {
+            bad_agreement.increment();
+        }
+    }
+
+    /**
+     * This method adds time spent in a stage.
+     * @param stage READ, PARSE, GENERATE, WAIT or WRITE
+     * @param nanos the time in nanoseconds
+     */
+    public void time(int stage, long nanos)
+    {
+        stage_nanos[stage].add(nanos);
+    }
+
+    /**
+     * This method adds one latency to the histogram of a stage.
+     * @param stage READ, PARSE, GENERATE, WAIT or WRITE
+     * @param nanos the latency in nanoseconds
+     */
+    public void latency(int stage, long nanos)
+    {
+        latency[stage].incrementAndGet(NO_OF_BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+    }
+
+    /**
+     * This method gives an upper bound of a quantile of the latencies of a stage, e.g. 0.99 for the 99th percentile.
+     * @return the upper bound of the bucket holding the quantile in nanoseconds, or 0 if no latency has been recorded
+     */
+    public long latencyQuantile(int stage, double quantile)
+    {
+        long total = 0;
+        for (int b = 0; b < NO_OF_BUCKETS; b++)
+        {
+            total += latency[stage].get(b);
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int b = 0; b < NO_OF_BUCKETS; b++)
+        {
+            seen += latency[stage].get(b);
+            if (seen >= Math.max(rank, 1))
+            {
+                return b >= 62 ? Long.MAX_VALUE : 2L << b;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public long getSentences()
+    {
+        return sentences.sum();
+    }
+
+    public long getBytes()
+    {
+        return bytes.sum();
+    }
+
+    public long getGoodSentences()
+    {
+        return good.sum();
+    }
+
+    public long getGoodWordOrderSentences()
+    {
+        return good.sum() + bad_agreement.sum();
+    }
+
+    public double getSentencesPerSecond()
+    {
+        return getSentences() * 1e9 / Math.max(1, System.nanoTime() - start_nanos);
+    }
+
+    public double getBytesPerSecond()
+    {
+        return getBytes() * 1e9 / Math.max(1, System.nanoTime() - start_nanos);
+    }
+
+    public double getGoodRatio()
+    {
+        long n = judged.sum();
+        return n == 0 ? 0 : getGoodSentences() * Math.pow(n, -1);
+    }
+
+    public double getGoodWordOrderRatio()
+    {
+        long n = judged.sum();
+        return n == 0 ? 0 : getGoodWordOrderSentences() * Math.pow(n, -1);
+    }
+
+    /**
+     * @return the verdict cache of these metrics: VerdictCache.SHARED for scoring, or null
+     */
+    VerdictCache cache()
+    {
+        return this == SCORING ? VerdictCache.SHARED : null;
+    }
+
+    public long getCacheHits()
+    {
+        VerdictCache cache = cache();
+        return cache == null ? 0 : cache.hits();
+    }
+
+    public long getCacheMisses()
+    {
+        VerdictCache cache = cache();
+        return cache == null ? 0 : cache.misses();
+    }
+
+    public long getCacheEvictions()
+    {
+        VerdictCache cache = cache();
+        return cache == null ? 0 : cache.evictions();
+    }
+
+    public double getCacheHitRatio()
+    {
+        long n = getCacheHits() + getCacheMisses();
+        return n == 0 ? 0 : getCacheHits() * Math.pow(n, -1);
+    }
+
+    public Map<String, Long> getStageMillis()
+    {
+        Map<String, Long> millis = new LinkedHashMap<String, Long>();
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++)
+        {
+            millis.put(STAGE_NAMES[stage], stage_nanos[stage].sum() / 1000000);
+        }
+        return millis;
+    }
+
+    public Map<String, Long> getMedianLatencyNanos()
+    {
+        return quantiles(0.5);
+    }
+
+    public Map<String, Long> getP99LatencyNanos()
+    {
+        return quantiles(0.99);
+    }
+
+    Map<String, Long> quantiles(double quantile)
+    {
+        Map<String, Long> nanos = new LinkedHashMap<String, Long>();
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++)
+        {
+            nanos.put(STAGE_NAMES[stage], latencyQuantile(stage, quantile));
+        }
+        return nanos;
+    }
+
+    /**
+     * This method sets all counters back to 0, e.g. before a new run.
+     */
+    public synchronized void reset()
+    {
+        sentences.reset();
+        bytes.reset();
+        judged.reset();
+        good.reset();
+        bad_agreement.reset();
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++)
+        {
+            stage_nanos[stage].reset();
+            for (int b = 0; b < NO_OF_BUCKETS; b++)
+            {
+                latency[stage].set(b, 0);
+            }
+        }
+        start_nanos = System.nanoTime();
+        logged_sentences = 0;
+        logged_bytes = 0;
+        logged_nanos = start_nanos;
+    }
+
+    /**
+     * This method describes the progress since the last call: totals, rates over the last period, good ratio,
+     * share of every stage in the time and the latencies.
+     * @return one log line, or null if nothing happened since the last call
+     */
+    synchronized String progress()
+    {
+        long now = System.nanoTime();
+        long s = getSentences();
+        long b = getBytes();
+        if (s == logged_sentences && b == logged_bytes)
+        {
+            logged_nanos = now;
+            return null;
+        }
+        double seconds = Math.max(1, now - logged_nanos) / 1e9;
+        StringBuilder line = new StringBuilder(name).append(": ");
+        line.append(s).append(" sentences (").append(Math.round((s - logged_sentences) / seconds)).append("/s), ");
+        line.append(String.format("%.1f MB (%.1f MB/s)", b / 1e6, (b - logged_bytes) / 1e6 / seconds));
+        if (judged.sum() > 0)
+        {
+            line.append(String.format(", good %.2f%%, word order %.2f%%", getGoodRatio() * 100, getGoodWordOrderRatio() * 100));
+        }
+        if (getCacheHits() + getCacheMisses() > 0)
+        {
+            line.append(String.format(", cache hits %.2f%% (%d evictions)", getCacheHitRatio() * 100, getCacheEvictions()));
+        }
+        long total = 0;
+        for (LongAdder stage : stage_nanos)
+        {
+            total += stage.sum();
+        }
+        for (int stage = 0; stage < STAGE_NAMES.length && total > 0; stage++)
+        {
+            long nanos = stage_nanos[stage].sum();
+            if (nanos > 0)
+            {
+                line.append(String.format(", %s %.0f%% (p50 %d ns, p99 %d ns)", STAGE_NAMES[stage], nanos * 100.0 / total,
+                        latencyQuantile(stage, 0.5), latencyQuantile(stage, 0.99)));
+            }
+        }
+        logged_sentences = s;
+        logged_bytes = b;
+        logged_nanos = now;
+        return line.toString();
+    }
+
+    /**
+     * This method registers the generation and scoring metrics with the platform MBean server, under
+     * modelling:type=Metrics,name=generation and modelling:type=Metrics,name=scoring.
+     */
+    public static synchronized void registerMBeans()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Metrics metrics : new Metrics[] {GENERATION, SCORING})
+        {
+            try
+            {
+                ObjectName object_name = new ObjectName("modelling:type=Metrics,name=" + metrics.name);
+                if (!server.isRegistered(object_name))
+                {
+                    server.registerMBean(metrics, object_name);
+                }
+            }
+            catch (JMException e)
+            {
+                System.err.println("Metrics: " + e);
+            }
+        }
+    }
+
+    /**
+     * This method prints a progress line for generation and scoring to System.err every period seconds, on a daemon thread.
+     * Nothing is printed for a period in which nothing happened.
+     * @param period the number of seconds between two lines
+     */
+    public static synchronized void startLogging(long period)
+    {
+        stopLogging();
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "metrics-log");
+                thread.setDaemon(true);
+                return thread;
+            });
+        logger.scheduleAtFixedRate(() -> {
+                for (Metrics metrics : new Metrics[] {GENERATION, SCORING})
+                {
+                    String line = metrics.progress();
+                    if (line != null)
+                    {
+                        System.err.println(line);
+                    }
+                }
+            }, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * This method stops the progress lines.
+     */
+    public static synchronized void stopLogging()
+    {
+        if (logger != null)
+        {
+            logger.shutdownNow();
+            logger = null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.Map;
+/**
+ * The attributes of the Metrics that are shown over JMX, e.g. in JConsole.
+ * Ratios are between 0 and 1 (of the judged sentences), rates are averages since the start or the last reset.
+ *
+ * @author Tisha Anders
+ */
+public interface MetricsMXBean
+{
+    long getSentences();
+
+    long getBytes();
+
+    long getGoodSentences();
+
+    long getGoodWordOrderSentences();
+
+    double getSentencesPerSecond();
+
+    double getBytesPerSecond();
+
+    double getGoodRatio();
+
+    double getGoodWordOrderRatio();
+
+    // time spent in every stage
+    Map<String, Long> getStageMillis();
+
+    // upper bounds of the latency quantiles of every stage
+    Map<String, Long> getMedianLatencyNanos();
+
+    Map<String, Long> getP99LatencyNanos();
+
+    // lookups in the shared VerdictCache since the start, 0 if it is off (and always for generation); not reset
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getCacheEvictions();
+
+    double getCacheHitRatio();
+
+    void reset();
+}
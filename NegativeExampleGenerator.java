@@ -0,0 +1,186 @@
+/**
+ * A class that generates labelled ungrammatical sentences with known defects, e.g. for training and calibrating a classifier.
+ * Every sentence is first generated by a SentenceGenerator; a given share of the sentences (the corruption rate) is then corrupted
+ * in one of the enabled ways:
+ *
+ *  PRONOUN_ANIMACY  the animacy of a relative pronoun (RA/RB) is flipped, so it no longer agrees with the noun in front of it
+ *  VERB_NUMBER      the number of a verb in a relative clause is flipped, so it no longer agrees with the noun in front of it
+ *  FINAL_VERB       the number of the final verb (after Z) is flipped, so it no longer agrees with the subject
+ *  DROPPED_COMMA    the C in front of a relative clause is dropped
+ *  RUN_LENGTH       a run of Ds, Ps, Ns or Vs is made one longer than the grammar allows
+ *
+ * The first three break agreement only, the last two break word order. The label of a sentence (LABELS[label()]) tells how it was
+ * corrupted, or "good" if it was not. Every sentence has at least one relative clause, so every kind fits every sentence.
+ *
+ * Whether a sentence is corrupted is decided before it is generated; only then does the SentenceGenerator record the positions of
+ * its commas, verbs and runs while writing it. A corruption changes or shifts a few bytes in place, so negative sentences are
+ * generated at about the speed of positive ones. Like the sentences, the corruption of sentence i only depends on the seed and on i.
+ *
+ * @author Tisha Anders
+ */
+public class NegativeExampleGenerator
+{
+    // labels
+    public static final int NONE = 0;
+    public static final int PRONOUN_ANIMACY = 1;
+    public static final int VERB_NUMBER = 2;
+    public static final int FINAL_VERB = 3;
+    public static final int DROPPED_COMMA = 4;
+    public static final int RUN_LENGTH = 5;
+    public static final String[] LABELS = {"good", "pronoun_animacy", "verb_number", "final_verb", "dropped_comma", "run_length"};
+
+    // the kinds of corruption to choose from, one bit per label
+    public static final int ALL = (1 << PRONOUN_ANIMACY) | (1 << VERB_NUMBER) | (1 << FINAL_VERB) | (1 << DROPPED_COMMA) | (1 << RUN_LENGTH);
+
+    // keeps the random choices of the corruption apart from those of the sentence
+    static final long CORRUPTION_SALT = 0x5DEECE66DL;
+
+    final SentenceGenerator generator;
+    final Grammar grammar;
+    final long seed;
+    final double corruption_rate;
+    final int kinds;
+    long state;
+    int label;
+
+    /**
+     * @param seed the seed of the whole set of sentences
+     * @param dataset_format whether to write the sentences in the format of ExampleBuilder
+     * @param grammar the bounds of the sentences
+     * @param corruption_rate the share of sentences to corrupt, between 0 and 1
+     * @param kinds the kinds of corruption to choose from, e.g. (1 << VERB_NUMBER) | (1 << FINAL_VERB), or ALL
+     */
+    public NegativeExampleGenerator(long seed, boolean dataset_format, Grammar grammar, double corruption_rate, int kinds)
+    {
+        if (corruption_rate < 0 || corruption_rate > 1)
+        {
+            throw new IllegalArgumentException("corruption rate must be between 0 and 1: " + corruption_rate);
+        }
+        if ((kinds & ~ALL) != 0 || (kinds == 0 && corruption_rate > 0))
+        {
+            throw new IllegalArgumentException("no valid kinds of corruption: " + kinds);
+        }
+        this.generator = grammar.generator(seed, dataset_format);
+        this.grammar = grammar;
+        this.seed = seed;
+        this.corruption_rate = corruption_rate;
+        this.kinds = kinds;
+        generator.record(true);
+    }
+
+    /**
+     * @return an upper bound on the length of one sentence, excluding the line separator
+     */
+    public int maxSentenceLength()
+    {
+        int longest_run = Math.max(Math.max(grammar.max_d, grammar.max_p), Math.max(grammar.max_n, grammar.max_v));
+        return generator.maxSentenceLength() + longest_run + 1;
+    }
+
+    /**
+     * @return the label of the last sentence, NONE if it was not corrupted
+     */
+    public int label()
+    {
+        return label;
+    }
+
+    /**
+     * This method draws a random number between 0 and bound-1.
+     */
+    int nextInt(int bound)
+    {
+        state += SentenceGenerator.GOLDEN_GAMMA;
+        return (int) (((SentenceGenerator.mix(state) >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * This method draws a random number between 0 (inclusive) and 1 (exclusive).
+     */
+    double nextDouble()
+    {
+        state += SentenceGenerator.GOLDEN_GAMMA;
+        return (SentenceGenerator.mix(state) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * This method writes sentence number index, corrupted with probability corruption_rate. Its label is given by label().
+     * @param index the number of the sentence
+     * @param buf the buffer, with room for maxSentenceLength() bytes at pos
+     * @param pos where to write the sentence
+     * @return the end of the sentence in buf
+     */
+    public int sentence(long index, byte[] buf, int pos)
+    {
+        label = NONE;
+        state = SentenceGenerator.mix(seed + CORRUPTION_SALT + (index + 1) * SentenceGenerator.GOLDEN_GAMMA);
+        boolean corrupt = corruption_rate > 0 && nextDouble() < corruption_rate;
+        if (generator.record != corrupt)
+        {
+            generator.record(corrupt);
+        }
+        int end = generator.sentence(index, buf, pos);
+        if (!corrupt)
+        {
+            return end;
+        }
+        int clauses = generator.no_of_clauses;
+        int candidates = kinds;
+        // the k-th set bit of candidates
+        int k = nextInt(Integer.bitCount(candidates));
+        for (int i = 0; i < k; i++)
+        {
+            candidates &= candidates - 1;
+        }
+        label = Integer.numberOfTrailingZeros(candidates);
+        switch (label)
+        {
+            case PRONOUN_ANIMACY:
+                flip(buf, generator.commas[nextInt(clauses)] + 2, (byte) 'A', (byte) 'B');
+                return end;
+            case VERB_NUMBER:
+                flip(buf, generator.verbs[nextInt(clauses)], (byte) 'S', (byte) 'T');
+                return end;
+            case FINAL_VERB:
+                flip(buf, generator.final_verb, (byte) 'S', (byte) 'T');
+                return end;
+            case DROPPED_COMMA:
+                int comma = generator.commas[nextInt(clauses)];
+                System.arraycopy(buf, comma + 1, buf, comma, end - comma - 1);
+                return end - 1;
+            default:
+                // there is always a run of Ns and one of Vs
+                int run = nextInt(generator.no_of_runs);
+                int run_start = generator.run_starts[run];
+                int run_end = run_start + generator.run_lengths[run];
+                byte token = buf[run_start];
+                int extra = maxRun(token) + 1 - generator.run_lengths[run];
+                System.arraycopy(buf, run_end, buf, run_end + extra, end - run_end);
+                for (int i = run_end; i < run_end + extra; i++)
+                {
+                    buf[i] = token;
+                }
+                return end + extra;
+        }
+    }
+
+    static void flip(byte[] buf, int i, byte a, byte b)
+    {
+        buf[i] = buf[i] == a ? b : a;
+    }
+
+    int maxRun(byte token)
+    {
+        switch (token)
+        {
+            case 'D':
+                return grammar.max_d;
+            case 'P':
+                return grammar.max_p;
+            case 'N':
+                return grammar.max_n;
+            default:
+                return grammar.max_v;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+/**
+ * A class that writes training examples as integer-encoded, padded tensors in NumPy .npy format, so that the training script can
+ * memory-map them (np.load(..., mmap_mode='r')) instead of reading dataset.txt and building one-hot arrays from text.
+ *
+ * A line is split like string_generator_gpu.py splits it: the encoder sequence is the intro (everything before the tab), the decoder
+ * sequence is a tab (start), the rest of the line and a newline (end). Every character is mapped to a fixed id:
+ *
+ *  0 padding, C R A B S T N V D P Z = 1 ... 11, space = 12, tab = 13, newline = 14
+ *
+ * so the ids of different files always agree (np.eye(15)[ids] gives the one-hot vectors). The sequences are padded with 0 at the end.
+ * For a name like "train", the encoder sequences are written to train.encoder.npy and the decoder sequences to train.decoder.npy,
+ * both arrays of unsigned bytes with one row per line.
+ *
+ * With length bucketing, the lines are sorted into buckets by the length of their decoder sequence, in steps of bucket_width, and every
+ * bucket is padded only to its own width, e.g. train.32.decoder.npy holds the lines with decoder sequences of 17 to 32 ids. Within a
+ * bucket, the lines keep their order; the encoder files of the buckets all have the full encoder width.
+ *
+ * The rows are streamed to the files as they come; the number of rows in the header is filled in when the file is closed.
+ *
+ * Usage: java NpyExport [--bucket-width n] text-file name
+ *
+ * @author Tisha Anders
+ */
+public class NpyExport
+{
+    public static final byte PAD = 0;
+    public static final byte SPACE = 12;
+    public static final byte TAB = 13;
+    public static final byte NEWLINE = 14;
+    public static final int NO_OF_IDS = 15;
+
+    // the id of every byte, -1 for bytes that are not part of the language
+    static final byte[] ID = new byte[256];
+
+    static
+    {
+        java.util.Arrays.fill(ID, (byte) -1);
+        for (int i = 0; i < BNFAutomaton.TOKENS.length(); i++)
+        {
+            ID[BNFAutomaton.TOKENS.charAt(i)] = (byte) (i + 1);
+        }
+        ID[' '] = SPACE;
+        ID['\t'] = TAB;
+        ID['\n'] = NEWLINE;
+    }
+
+    /**
+     * A two-dimensional .npy array of unsigned bytes, written one row at a time.
+     */
+    static class Array implements AutoCloseable
+    {
+        static final String MAGIC = "\u0093NUMPY";
+        // room for any number of rows in the header
+        static final long MAX_ROWS = Long.MAX_VALUE;
+
+        final File file;
+        final int width;
+        final int header_length;
+        final OutputStream out;
+        long no_of_rows;
+
+        Array(File file, int width) throws IOException
+        {
+            this.file = file;
+            this.width = width;
+            int unpadded = 10 + dictionary(MAX_ROWS).length() + 1;
+            header_length = (unpadded + 63) / 64 * 64;
+            out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+            out.write(header(0));
+        }
+
+        String dictionary(long rows)
+        {
+            return "{'descr': '|u1', 'fortran_order': False, 'shape': (" + rows + ", " + width + "), }";
+        }
+
+        /**
+         * This method gives the header of the file: magic string, version 1.0, length and dictionary, padded with spaces to header_length.
+         */
+        byte[] header(long rows)
+        {
+            byte[] header = new byte[header_length];
+            java.util.Arrays.fill(header, (byte) ' ');
+            byte[] magic = MAGIC.getBytes(StandardCharsets.ISO_8859_1);
+            System.arraycopy(magic, 0, header, 0, magic.length);
+            header[6] = 1;
+            header[7] = 0;
+            int dictionary_length = header_length - 10;
+            header[8] = (byte) dictionary_length;
+            header[9] = (byte) (dictionary_length >>> 8);
+            byte[] dictionary = dictionary(rows).getBytes(StandardCharsets.ISO_8859_1);
+            System.arraycopy(dictionary, 0, header, 10, dictionary.length);
+            header[header_length - 1] = '\n';
+            return header;
+        }
+
+        /**
+         * This method appends a row.
+         * @param row width ids
+         */
+        void row(byte[] row) throws IOException
+        {
+            out.write(row, 0, width);
+            no_of_rows++;
+        }
+
+        /**
+         * This method closes the file and writes the number of rows into its header.
+         */
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+            {
+                raf.write(header(no_of_rows));
+            }
+        }
+    }
+
+    /**
+     * The encoder and decoder arrays of one bucket.
+     */
+    static class Bucket
+    {
+        final Array encoder;
+        final Array decoder;
+
+        Bucket(Array encoder, Array decoder)
+        {
+            this.encoder = encoder;
+            this.decoder = decoder;
+        }
+    }
+
+    final String name;
+    final int encoder_width;
+    final int decoder_width;
+    final int bucket_width;
+    final Bucket[] buckets;
+    final byte[] encoder_row;
+    final byte[] decoder_row;
+    long no_of_lines;
+
+    /**
+     * @param name the name of the files, e.g. "train" for train.encoder.npy and train.decoder.npy
+     * @param encoder_width the length of the longest encoder sequence (intro)
+     * @param decoder_width the length of the longest decoder sequence (tab, rest of the line, newline)
+     * @param bucket_width the step of the length buckets, or 0 for one array padded to decoder_width
+     */
+    public NpyExport(String name, int encoder_width, int decoder_width, int bucket_width)
+    {
+        this.name = name;
+        this.encoder_width = encoder_width;
+        this.decoder_width = decoder_width;
+        this.bucket_width = bucket_width > 0 ? bucket_width : decoder_width;
+        buckets = new Bucket[(decoder_width + this.bucket_width - 1) / this.bucket_width];
+        encoder_row = new byte[encoder_width];
+        decoder_row = new byte[decoder_width];
+    }
+
+    /**
+     * This method gives an exporter for the sentences of a grammar in the format of ExampleBuilder, with widths that fit any of them.
+     */
+    public static NpyExport forGrammar(String name, Grammar grammar, int bucket_width)
+    {
+        // intro + space; the rest is what remains of the longest sentence, plus the start and end ids
+        int intro = grammar.max_d + grammar.max_p + grammar.max_n + 2 + 1;
+        int rest = grammar.maxSentenceLength() - intro - 1;
+        return new NpyExport(name, intro, rest + 2, bucket_width);
+    }
+
+    Bucket bucket(int decoder_length) throws IOException
+    {
+        int b = Math.max(decoder_length - 1, 0) / bucket_width;
+        if (buckets[b] == null)
+        {
+            int width = Math.min((b + 1) * bucket_width, decoder_width);
+            String prefix = buckets.length == 1 ? name : name + "." + width;
+            buckets[b] = new Bucket(new Array(new File(prefix + ".encoder.npy"), encoder_width),
+                                    new Array(new File(prefix + ".decoder.npy"), width));
+        }
+        return buckets[b];
+    }
+
+    /**
+     * This method encodes one line and appends it to the arrays.
+     * @param buf the buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index after the last byte of the line, excluding the line terminator
+     */
+    public void line(byte[] buf, int from, int to) throws IOException
+    {
+        int tab = from;
+        while (tab < to && buf[tab] != '\t')
+        {
+            tab++;
+        }
+        int encoder_length = tab - from;
+        int decoder_length = to - tab + 1; // tab (or the start id if there is none), the rest and the newline
+        if (encoder_length > encoder_width || decoder_length > decoder_width)
+        {
+            throw new IOException("line " + (no_of_lines + 1) + " is longer than " + encoder_width + " + " + decoder_width + " ids");
+        }
+        java.util.Arrays.fill(encoder_row, PAD);
+        java.util.Arrays.fill(decoder_row, PAD);
+        encode(buf, from, tab, encoder_row, 0);
+        decoder_row[0] = TAB;
+        encode(buf, Math.min(tab + 1, to), to, decoder_row, 1);
+        decoder_row[decoder_length - 1] = NEWLINE;
+        Bucket bucket = bucket(decoder_length);
+        bucket.encoder.row(encoder_row);
+        bucket.decoder.row(decoder_row);
+        no_of_lines++;
+    }
+
+    void encode(byte[] buf, int from, int to, byte[] row, int pos) throws IOException
+    {
+        for (int i = from; i < to; i++)
+        {
+            byte id = ID[buf[i] & 0xFF];
+            if (id < 0)
+            {
+                throw new IOException("line " + (no_of_lines + 1) + ": unknown character '" + (char) (buf[i] & 0xFF) + "'");
+            }
+            row[pos++] = id;
+        }
+    }
+
+    /**
+     * This method closes all arrays, filling in the number of rows.
+     * @return the files written, encoder and decoder of every bucket
+     */
+    public List<File> close() throws IOException
+    {
+        if (buckets.length == 1 && buckets[0] == null)
+        {
+            bucket(1); // the files exist even without lines
+        }
+        List<File> files = new ArrayList<File>();
+        IOException error = null;
+        for (Bucket bucket : buckets)
+        {
+            if (bucket == null)
+            {
+                continue;
+            }
+            for (Array array : new Array[] {bucket.encoder, bucket.decoder})
+            {
+                try
+                {
+                    array.close();
+                    files.add(array.file);
+                }
+                catch (IOException e)
+                {
+                    error = error == null ? e : error;
+                }
+            }
+        }
+        if (error != null)
+        {
+            throw error;
+        }
+        return files;
+    }
+
+    /**
+     * This method converts a text file (like dataset.txt, possibly gzip-compressed) to .npy arrays. The file is read twice:
+     * once to find the longest sequences, so that the arrays are not padded more than needed, and once to write them.
+     * @param text the file to be converted
+     * @param name the name of the .npy files
+     * @param bucket_width the step of the length buckets, or 0 for no buckets
+     * @return the files written
+     */
+    public static List<File> convert(File text, String name, int bucket_width) throws IOException
+    {
+        final int[] widths = {0, 0};
+        FileScorer.forEachLine(text, (buf, from, to, offset) -> {
+                int tab = from;
+                while (tab < to && buf[tab] != '\t')
+                {
+                    tab++;
+                }
+                widths[0] = Math.max(widths[0], tab - from);
+                widths[1] = Math.max(widths[1], to - tab + 1);
+            });
+        final NpyExport export = new NpyExport(name, widths[0], Math.max(widths[1], 2), bucket_width);
+        List<File> files;
+        try
+        {
+            FileScorer.forEachLine(text, (buf, from, to, offset) -> export.line(buf, from, to));
+        }
+        finally
+        {
+            files = export.close();
+        }
+        return files;
+    }
+
+    /**
+     * This method converts the text file given on the command line.
+     * @param args [--bucket-width n] text-file name
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int bucket_width = 0;
+        int i = 0;
+        if (args.length > 1 && args[0].equals("--bucket-width"))
+        {
+            bucket_width = Integer.parseInt(args[1]);
+            i = 2;
+        }
+        if (args.length - i != 2)
+        {
+            System.err.println("usage: java NpyExport [--bucket-width n] text-file name");
+            return;
+        }
+        for (File file : convert(new File(args[i]), args[i + 1], bucket_width))
+        {
+            System.out.println(file);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * A class that validates a sentence one token at a time, e.g. while the LSTM samples it.
+ * It runs the BNFAutomaton and the agreement checks of BNFAutomaton.judge incrementally, so every token is accepted in constant time.
+ * After every token it can tell whether the prefix can still become a grammatical sentence (word order & agreement), and which
+ * tokens may come next, as a bitmask over the token indices of BNFAutomaton:
+ *
+ *  bit 0..10: C R A B S T N V D P Z,  bit 11 (END): the sentence may end here
+ *
+ * Agreement narrows the mask: after "R" only the animacy of the last noun is allowed, and a verb may only end in the number of the
+ * noun it agrees with. Once a token is not allowed, the prefix stays invalid and the position of that token is kept as the first error.
+ * Only the eleven tokens are accepted; any other character is an error.
+ *
+ * @author Tisha Anders
+ */
+public class PrefixValidator
+{
+    // bit of the token mask that is set if the sentence may end after the prefix
+    public static final int END = BNFAutomaton.NO_OF_TOKENS;
+
+    final BNFAutomaton automaton;
+    int state;
+    int noun_a;
+    int noun_s;
+    int subject_s;
+    int position;
+    int first_error;
+
+    /**
+     * This constructor validates against the default grammar.
+     */
+    public PrefixValidator()
+    {
+        this(BNFAutomaton.DEFAULT);
+    }
+
+    /**
+     * @param grammar the grammar to validate against
+     */
+    public PrefixValidator(Grammar grammar)
+    {
+        this(grammar.automaton());
+    }
+
+    PrefixValidator(BNFAutomaton automaton)
+    {
+        this.automaton = automaton;
+        reset();
+    }
+
+    /**
+     * This method starts a new sentence.
+     */
+    public void reset()
+    {
+        state = BNFAutomaton.START;
+        noun_a = 0;
+        noun_s = 0;
+        subject_s = 0;
+        position = 0;
+        first_error = -1;
+    }
+
+    /**
+     * This method appends one character to the prefix.
+     * @param c the character
+     * @return whether the prefix can still become a grammatical sentence
+     */
+    public boolean accept(char c)
+    {
+        int sym = BNFAutomaton.symbol(c);
+        return acceptToken(sym < BNFAutomaton.NO_OF_TOKENS ? sym : -1);
+    }
+
+    /**
+     * This method appends one token to the prefix.
+     * @param token the token index (BNFAutomaton.C ... BNFAutomaton.Z), or -1 for any other character
+     * @return whether the prefix can still become a grammatical sentence
+     */
+    public boolean acceptToken(int token)
+    {
+        if (first_error < 0)
+        {
+            if (token < 0 || (allowedMask() & (1 << token)) == 0)
+            {
+                first_error = position;
+            }
+            else
+            {
+                state = automaton.next[(state << BNFAutomaton.SHIFT) | token];
+                switch (automaton.role[state])
+                {
+                    case BNFAutomaton.NOUN_ANIMACY: noun_a = token; break;
+                    case BNFAutomaton.NOUN_NUMBER: noun_s = token; break;
+                    case BNFAutomaton.SUBJECT_NUMBER: noun_s = token; subject_s = token; break;
+                    default: break;
+                }
+            }
+        }
+        position++;
+        return first_error < 0;
+    }
+
+    /**
+     * This method gives the tokens that may follow the prefix.
+     * @return a bitmask with bit i set if token i may come next, and bit END set if the sentence may end here; 0 if the prefix is invalid
+     */
+    public int allowedMask()
+    {
+        if (first_error >= 0)
+        {
+            return 0;
+        }
+        int mask = automaton.allowed[state];
+        switch (automaton.constraint[state])
+        {
+            case BNFAutomaton.PRONOUN_ANIMACY:
+                return mask & ~((1 << BNFAutomaton.A) | (1 << BNFAutomaton.B)) | (1 << noun_a);
+            case BNFAutomaton.VERB_NUMBER:
+                return mask & ~((1 << BNFAutomaton.S) | (1 << BNFAutomaton.T)) | (1 << noun_s);
+            case BNFAutomaton.FINAL_VERB_NUMBER:
+                return mask & ~((1 << BNFAutomaton.S) | (1 << BNFAutomaton.T)) | (1 << subject_s);
+            default:
+                return mask;
+        }
+    }
+
+    /**
+     * @return whether the prefix can still become a grammatical sentence
+     */
+    public boolean isViable()
+    {
+        return first_error < 0;
+    }
+
+    /**
+     * @return whether the prefix is a grammatical sentence (word order & agreement)
+     */
+    public boolean isComplete()
+    {
+        return first_error < 0 && automaton.verdict[state] == BNFAutomaton.ACCEPT;
+    }
+
+    /**
+     * @return the position of the first token that was not allowed, or -1 if there was none
+     */
+    public int firstErrorPosition()
+    {
+        return first_error;
+    }
+
+    /**
+     * @return the number of tokens accepted since the last reset
+     */
+    public int length()
+    {
+        return position;
+    }
+
+    /**
+     * This method finds the first position at which a string stops being a prefix of a grammatical sentence.
+     * @param s the string to be checked
+     * @return the position of the first token that is not allowed, s.length() if the string is a valid but unfinished prefix,
+     * or -1 if the string is a grammatical sentence
+     */
+    public static int firstError(CharSequence s)
+    {
+        PrefixValidator validator = new PrefixValidator();
+        for (int i = 0; i < s.length(); i++)
+        {
+            if (!validator.accept(s.charAt(i)))
+            {
+                return i;
+            }
+        }
+        return validator.isComplete() ? -1 : s.length();
+    }
+}
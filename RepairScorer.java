@@ -0,0 +1,717 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+/**
+ * A class that measures how far a bad generation is from a grammatical sentence: the smallest number of tokens that have to be
+ * inserted, deleted or substituted to make it correct (word order & agreement), together with one nearest repair.
+ *
+ * The distance is found by dynamic programming over the compiled BNFAutomaton, extended by the agreement features it checks: a state of
+ * the extended automaton is an automaton state together with the animacy of the last noun, the number of the last noun and the number
+ * of the subject, and only tokens that agree are allowed (like in PrefixValidator). A feature is forgotten once it has been checked,
+ * so that only a few hundred of these states are reachable. For every prefix of the line, the DP gives the cheapest way to reach
+ * every state: by reading the next character (free if it is the token read, one substitution otherwise), by deleting it, or by
+ * inserting a token. The insertions of one column are settled in order of cost, like a breadth-first search. A line of n characters
+ * takes O(n * states * tokens) steps at most; since the cost is limited (see search), a generation with a few errors takes well under
+ * a millisecond, a random string of tokens a few milliseconds.
+ *
+ * Like the file evaluators, the scorer crops the last character of every line. Good lines have distance 0 and are not searched.
+ *
+ * Usage: java RepairScorer [--threads n] [--repairs out-file] file ...
+ *
+ * @author Tisha Anders
+ */
+public class RepairScorer
+{
+    // the last bucket of the histograms counts all larger distances
+    static final int NO_OF_DISTANCES = 64;
+    // operations of the DP
+    static final int MATCH = 0;
+    static final int SUBSTITUTE = 1;
+    static final int DELETE = 2;
+    static final int INSERT = 3;
+    static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    final BNFAutomaton automaton;
+    final int no_of_states;
+    final int start;
+    // the extended automaton: next state for every state and token, -1 if the token is not allowed
+    final int[] next;
+    final boolean[] accepting;
+    // the lengths of the shortest and longest endings that lead from every state to a sentence, -1 if there are none
+    final int[] shortest;
+    final int[] longest;
+
+    // work arrays, grown as needed
+    int[] previous;
+    int[] current;
+    int[] back = new int[0];
+    int[] order;
+    int[] queue;
+    int[] queue_cost;
+    // the states reached in a column before its insertions, and the column every state was last settled in, numbered across lines
+    int[] reached;
+    int[] settled;
+    int[] counts = new int[0];
+    int column;
+    int[] active;
+    int[] symbols = new int[0];
+    int symbols_length;
+    int no_of_insertions;
+    int no_of_deletions;
+    int no_of_substitutions;
+    int end_state;
+
+    /**
+     * This constructor makes a scorer for the default grammar.
+     */
+    public RepairScorer()
+    {
+        this(BNFAutomaton.DEFAULT);
+    }
+
+    /**
+     * @param grammar the grammar the repairs have to satisfy
+     */
+    public RepairScorer(Grammar grammar)
+    {
+        this(grammar.automaton());
+    }
+
+    RepairScorer(BNFAutomaton automaton)
+    {
+        this.automaton = automaton;
+        // features are kept as token indices (A/B, S/T), 0 if unknown or already checked
+        Map<Integer, Integer> numbers = new HashMap<Integer, Integer>();
+        int[] keys = new int[64];
+        int[] table = new int[64 * BNFAutomaton.NO_OF_TOKENS];
+        keys[0] = key(BNFAutomaton.START, 0, 0, 0);
+        numbers.put(keys[0], 0);
+        int n = 1;
+        for (int p = 0; p < n; p++)
+        {
+            int state = keys[p] >>> 9;
+            int noun_a = (keys[p] >>> 6) & 7;
+            int noun_s = (keys[p] >>> 3) & 7;
+            int subject_s = keys[p] & 7;
+            for (int token = 0; token < BNFAutomaton.NO_OF_TOKENS; token++)
+            {
+                int to = -1;
+                if (allowed(state, noun_a, noun_s, subject_s, token))
+                {
+                    int s = automaton.next[(state << BNFAutomaton.SHIFT) | token];
+                    int a = noun_a;
+                    int ns = noun_s;
+                    int ss = subject_s;
+                    switch (automaton.role[s])
+                    {
+                        case BNFAutomaton.NOUN_ANIMACY: a = token; break;
+                        case BNFAutomaton.NOUN_NUMBER: ns = token; break;
+                        case BNFAutomaton.SUBJECT_NUMBER: ns = token; ss = token; break;
+                        case BNFAutomaton.PRONOUN_ANIMACY: a = 0; break;
+                        case BNFAutomaton.VERB_NUMBER: ns = 0; break;
+                        case BNFAutomaton.FINAL_VERB_NUMBER: ss = 0; break;
+                        default: break;
+                    }
+                    int k = key(s, a, ns, ss);
+                    Integer number = numbers.get(k);
+                    if (number == null)
+                    {
+                        if (n == keys.length)
+                        {
+                            keys = java.util.Arrays.copyOf(keys, n * 2);
+                            table = java.util.Arrays.copyOf(table, n * 2 * BNFAutomaton.NO_OF_TOKENS);
+                        }
+                        number = n;
+                        keys[n++] = k;
+                        numbers.put(k, number);
+                    }
+                    to = number;
+                }
+                table[p * BNFAutomaton.NO_OF_TOKENS + token] = to;
+            }
+        }
+        no_of_states = n;
+        start = 0;
+        next = java.util.Arrays.copyOf(table, n * BNFAutomaton.NO_OF_TOKENS);
+        accepting = new boolean[n];
+        for (int p = 0; p < n; p++)
+        {
+            accepting[p] = automaton.verdict[keys[p] >>> 9] == BNFAutomaton.ACCEPT;
+        }
+        shortest = new int[n];
+        longest = new int[n];
+        completions();
+        previous = new int[n];
+        current = new int[n];
+        order = new int[n];
+        queue = new int[n];
+        queue_cost = new int[n];
+        reached = new int[n];
+        settled = new int[n];
+        active = new int[n];
+    }
+
+    /**
+     * This method finds the shortest and longest endings of every state, relaxing the transitions until nothing changes.
+     * The grammar is bounded, so the automaton has no cycles and this ends after at most no_of_states rounds.
+     */
+    void completions()
+    {
+        for (int p = 0; p < no_of_states; p++)
+        {
+            shortest[p] = accepting[p] ? 0 : -1;
+            longest[p] = accepting[p] ? 0 : -1;
+        }
+        boolean changed = true;
+        for (int round = 0; changed; round++)
+        {
+            if (round > no_of_states)
+            {
+                throw new IllegalStateException("the automaton has a cycle");
+            }
+            changed = false;
+            for (int p = no_of_states - 1; p >= 0; p--)
+            {
+                for (int token = 0; token < BNFAutomaton.NO_OF_TOKENS; token++)
+                {
+                    int r = next[p * BNFAutomaton.NO_OF_TOKENS + token];
+                    if (r >= 0 && shortest[r] >= 0)
+                    {
+                        if (shortest[p] < 0 || shortest[r] + 1 < shortest[p])
+                        {
+                            shortest[p] = shortest[r] + 1;
+                            changed = true;
+                        }
+                        if (longest[r] + 1 > longest[p])
+                        {
+                            longest[p] = longest[r] + 1;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This method gives a lower bound on the cost of reaching a sentence from a state with rest characters left: every edit changes
+     * the difference between the characters left and the tokens still to come by at most one.
+     */
+    int lowerBound(int p, int rest)
+    {
+        if (shortest[p] < 0)
+        {
+            return INFINITY;
+        }
+        return Math.max(0, Math.max(shortest[p] - rest, rest - longest[p]));
+    }
+
+    static int key(int state, int noun_a, int noun_s, int subject_s)
+    {
+        return (state << 9) | (noun_a << 6) | (noun_s << 3) | subject_s;
+    }
+
+    /**
+     * This method tells whether a token may follow, by word order and by agreement, like PrefixValidator.allowedMask.
+     */
+    boolean allowed(int state, int noun_a, int noun_s, int subject_s, int token)
+    {
+        if (state == BNFAutomaton.DEAD || state == BNFAutomaton.RULE_SEEN || (automaton.allowed[state] & (1 << token)) == 0)
+        {
+            return false;
+        }
+        boolean feature = token == BNFAutomaton.A || token == BNFAutomaton.B || token == BNFAutomaton.S || token == BNFAutomaton.T;
+        if (!feature)
+        {
+            return true;
+        }
+        switch (automaton.constraint[state])
+        {
+            case BNFAutomaton.PRONOUN_ANIMACY: return token == noun_a || (token != BNFAutomaton.A && token != BNFAutomaton.B);
+            case BNFAutomaton.VERB_NUMBER: return token == noun_s || (token != BNFAutomaton.S && token != BNFAutomaton.T);
+            case BNFAutomaton.FINAL_VERB_NUMBER: return token == subject_s || (token != BNFAutomaton.S && token != BNFAutomaton.T);
+            default: return true;
+        }
+    }
+
+    /**
+     * This method computes the edit distance of a range of ASCII bytes to the nearest grammatical sentence.
+     * @param s the bytes
+     * @param from index of the first byte
+     * @param to index after the last byte
+     * @return the smallest number of insertions, deletions and substitutions of tokens that make it correct
+     */
+    public int distance(byte[] s, int from, int to)
+    {
+        return search(s, from, to, false);
+    }
+
+    /**
+     * This method finds a nearest grammatical sentence for a range of ASCII bytes.
+     * @param s the bytes
+     * @param from index of the first byte
+     * @param to index after the last byte
+     * @return a correct sentence at the smallest edit distance; the numbers of edits are given by insertions(), deletions() and substitutions()
+     */
+    public String repair(byte[] s, int from, int to)
+    {
+        search(s, from, to, true);
+        return trace(to - from);
+    }
+
+    /**
+     * This method finds a nearest grammatical sentence for a string.
+     */
+    public String repair(CharSequence s)
+    {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            char c = s.charAt(i);
+            bytes[i] = c < 256 ? (byte) c : (byte) '?';
+        }
+        return repair(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return the number of insertions of the last repair
+     */
+    public int insertions()
+    {
+        return no_of_insertions;
+    }
+
+    /**
+     * @return the number of deletions of the last repair
+     */
+    public int deletions()
+    {
+        return no_of_deletions;
+    }
+
+    /**
+     * @return the number of substitutions of the last repair
+     */
+    public int substitutions()
+    {
+        return no_of_substitutions;
+    }
+
+    /**
+     * This method runs the DP with ever larger limits on the cost, until a sentence within the limit is found. A cheapest path never
+     * passes through a state whose cost plus lowerBound is more than the whole path, so such states can be left out: a line with
+     * few errors only visits the states close to its own path.
+     * @return the distance
+     */
+    int search(byte[] s, int from, int to, boolean keep_back)
+    {
+        // deleting everything and inserting a shortest sentence always works
+        int bound = to - from + shortest[start];
+        for (int limit = Math.max(lowerBound(start, to - from), 1); ; limit = Math.min(limit * 2, bound))
+        {
+            int distance = search(s, from, to, keep_back, limit);
+            if (distance <= limit)
+            {
+                return distance;
+            }
+        }
+    }
+
+    /**
+     * This method runs the DP, column by column, keeping the costs of the last two columns only and, for a repair, the best
+     * predecessor of every state in every column.
+     * @param limit the highest cost of a state that is followed
+     * @return the distance, or INFINITY if it is above the limit
+     */
+    int search(byte[] s, int from, int to, boolean keep_back, int limit)
+    {
+        int n = to - from;
+        int q = no_of_states;
+        if (keep_back && back.length < (n + 1) * q)
+        {
+            back = new int[(n + 1) * q];
+        }
+        if (symbols.length < n)
+        {
+            symbols = new int[n];
+        }
+        if (counts.length < limit + 2)
+        {
+            counts = new int[limit + 2];
+        }
+        for (int i = 0; i < n; i++)
+        {
+            symbols[i] = BNFAutomaton.symbol(s[from + i] & 0xFF);
+        }
+        symbols_length = n;
+        java.util.Arrays.fill(current, INFINITY);
+        current[start] = 0;
+        column++;
+        reached[0] = start;
+        int no_of_active = settle(0, 1, keep_back, limit);
+        for (int i = 1; i <= n; i++)
+        {
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+            java.util.Arrays.fill(current, INFINITY);
+            int symbol = symbols[i - 1];
+            int base = i * q;
+            column++;
+            int no_of_reached = 0;
+            for (int a = 0; a < no_of_active; a++)
+            {
+                int p = active[a];
+                int cost = previous[p];
+                if (cost + 1 < current[p] && cost + 1 + lowerBound(p, n - i) <= limit)
+                {
+                    if (current[p] == INFINITY)
+                    {
+                        reached[no_of_reached++] = p;
+                    }
+                    current[p] = cost + 1;
+                    if (keep_back)
+                    {
+                        back[base + p] = (p << 2) | DELETE;
+                    }
+                }
+                int row = p * BNFAutomaton.NO_OF_TOKENS;
+                for (int token = 0; token < BNFAutomaton.NO_OF_TOKENS; token++)
+                {
+                    int r = next[row + token];
+                    if (r >= 0)
+                    {
+                        int c = token == symbol ? cost : cost + 1;
+                        if (c < current[r] && c + lowerBound(r, n - i) <= limit)
+                        {
+                            if (current[r] == INFINITY)
+                            {
+                                reached[no_of_reached++] = r;
+                            }
+                            current[r] = c;
+                            if (keep_back)
+                            {
+                                back[base + r] = (p << 2) | (token == symbol ? MATCH : SUBSTITUTE);
+                            }
+                        }
+                    }
+                }
+            }
+            no_of_active = settle(i, no_of_reached, keep_back, limit);
+        }
+        int best = INFINITY;
+        for (int a = 0; a < no_of_active; a++)
+        {
+            int p = active[a];
+            if (accepting[p] && current[p] < best)
+            {
+                best = current[p];
+                end_state = p;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * This method adds the insertions of column i, taking the states of reached[0..no_of_reached) in order of cost and, after them,
+     * the states reached by inserting tokens (whose costs never decrease). It leaves the settled states in active, in order of cost.
+     * @return the number of settled states
+     */
+    int settle(int i, int no_of_reached, boolean keep_back, int limit)
+    {
+        // sort the reached states by cost, counting the states of every cost from 0 to limit
+        java.util.Arrays.fill(counts, 0, limit + 2, 0);
+        for (int a = 0; a < no_of_reached; a++)
+        {
+            counts[current[reached[a]] + 1]++;
+        }
+        for (int c = 1; c <= limit + 1; c++)
+        {
+            counts[c] += counts[c - 1];
+        }
+        for (int a = 0; a < no_of_reached; a++)
+        {
+            int p = reached[a];
+            order[counts[current[p]]++] = p;
+        }
+        int mark = column;
+        int base = i * no_of_states;
+        int rest = symbols_length - i;
+        int head = 0;
+        int tail = 0;
+        int a = 0;
+        int no_of_settled = 0;
+        while (a < no_of_reached || head < tail)
+        {
+            int p;
+            int cost;
+            if (head < tail && (a >= no_of_reached || queue_cost[head] < current[order[a]]))
+            {
+                p = queue[head];
+                cost = queue_cost[head++];
+            }
+            else
+            {
+                p = order[a++];
+                cost = current[p];
+            }
+            if (settled[p] == mark || cost != current[p])
+            {
+                continue;
+            }
+            settled[p] = mark;
+            active[no_of_settled++] = p;
+            if (cost + 1 > limit)
+            {
+                continue;
+            }
+            int row = p * BNFAutomaton.NO_OF_TOKENS;
+            for (int token = 0; token < BNFAutomaton.NO_OF_TOKENS; token++)
+            {
+                int r = next[row + token];
+                if (r >= 0 && cost + 1 < current[r] && cost + 1 + lowerBound(r, rest) <= limit)
+                {
+                    current[r] = cost + 1;
+                    if (keep_back)
+                    {
+                        back[base + r] = (p << 2) | INSERT;
+                    }
+                    queue[tail] = r;
+                    queue_cost[tail++] = cost + 1;
+                }
+            }
+        }
+        return no_of_settled;
+    }
+
+    /**
+     * This method follows the best predecessors back from the best accepting state of the last column.
+     */
+    String trace(int n)
+    {
+        no_of_insertions = 0;
+        no_of_deletions = 0;
+        no_of_substitutions = 0;
+        StringBuilder sb = new StringBuilder();
+        int p = end_state;
+        int i = n;
+        while (i > 0 || p != start)
+        {
+            int b = back[i * no_of_states + p];
+            int from = b >> 2;
+            int op = b & 3;
+            if (op == DELETE)
+            {
+                no_of_deletions++;
+            }
+            else
+            {
+                sb.append(BNFAutomaton.TOKENS.charAt(token(from, p, op == MATCH ? symbols[i - 1] : -1)));
+                if (op == INSERT)
+                {
+                    no_of_insertions++;
+                }
+                else if (op == SUBSTITUTE)
+                {
+                    no_of_substitutions++;
+                }
+            }
+            if (op != INSERT)
+            {
+                i--;
+            }
+            p = from;
+        }
+        return sb.reverse().toString();
+    }
+
+    /**
+     * @return a token that leads from state p to state r, the preferred one if it does
+     */
+    int token(int p, int r, int preferred)
+    {
+        if (preferred >= 0 && preferred < BNFAutomaton.NO_OF_TOKENS && next[p * BNFAutomaton.NO_OF_TOKENS + preferred] == r)
+        {
+            return preferred;
+        }
+        for (int token = 0; token < BNFAutomaton.NO_OF_TOKENS; token++)
+        {
+            if (next[p * BNFAutomaton.NO_OF_TOKENS + token] == r)
+            {
+                return token;
+            }
+        }
+        throw new IllegalStateException("no transition from " + p + " to " + r);
+    }
+
+    /**
+     * The accuracy of a generation file and the histograms of the edit distances of its bad lines.
+     */
+    public static class Report
+    {
+        public final FileScorer.Tally tally = new FileScorer.Tally();
+        // distances of the lines with bad agreement only, and of those with bad word order
+        public final long[] agreement_distances = new long[NO_OF_DISTANCES];
+        public final long[] word_order_distances = new long[NO_OF_DISTANCES];
+        public long total_distance;
+
+        void add(int judgement, int distance)
+        {
+            tally.add(judgement);
+            if (judgement == BNFAutomaton.BAD_AGREEMENT)
+            {
+                agreement_distances[Math.min(distance, NO_OF_DISTANCES - 1)]++;
+            }
+            else if (judgement == BNFAutomaton.BAD_WORD_ORDER)
+            {
+                word_order_distances[Math.min(distance, NO_OF_DISTANCES - 1)]++;
+            }
+            total_distance += distance;
+        }
+
+        /**
+         * This method adds the counts of another report (e.g. of another chunk) to these.
+         */
+        public void add(Report other)
+        {
+            tally.add(other.tally);
+            for (int d = 0; d < NO_OF_DISTANCES; d++)
+            {
+                agreement_distances[d] += other.agreement_distances[d];
+                word_order_distances[d] += other.word_order_distances[d];
+            }
+            total_distance += other.total_distance;
+        }
+
+        /**
+         * @return the mean edit distance of the bad lines
+         */
+        public double meanDistance()
+        {
+            return total_distance * Math.pow(tally.no_of_tested_gens - tally.no_of_good_gens, -1);
+        }
+
+        public String toString()
+        {
+            String nl = System.lineSeparator();
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "%d generations, word order %.2f%%, word order & agreement %.2f%%, mean distance of bad lines %.2f",
+                    tally.no_of_tested_gens, tally.wordOrderPercentage(), tally.percentage(), meanDistance())).append(nl);
+            sb.append(String.format("  %8s  %14s  %14s", "distance", "bad agreement", "bad word order")).append(nl);
+            for (int d = 0; d < NO_OF_DISTANCES; d++)
+            {
+                if (agreement_distances[d] > 0 || word_order_distances[d] > 0)
+                {
+                    String bucket = d == NO_OF_DISTANCES - 1 ? d + "+" : Integer.toString(d);
+                    sb.append(String.format("  %8s  %14d  %14d", bucket, agreement_distances[d], word_order_distances[d])).append(nl);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * This method judges one line like the file evaluators and, if it is bad, measures its distance.
+     */
+    void line(byte[] buf, int from, int to, Report report)
+    {
+        int judgement = FileScorer.judgeLine(buf, from, to);
+        int distance = 0;
+        if (judgement != BNFAutomaton.GOOD)
+        {
+            distance = distance(buf, from, FileScorer.cropLastCharacter(buf, from, to));
+        }
+        report.add(judgement, distance);
+    }
+
+    /**
+     * This method scores a generation file and measures the edit distances of its bad lines.
+     * @param file the file to be examined; it may be gzip-compressed
+     * @param no_of_threads the number of threads to use
+     * @return the accuracy and the histograms of the distances
+     */
+    public static Report score(File file, int no_of_threads) throws IOException
+    {
+        return FileScorer.reduceChunks(file, no_of_threads, Report::new, report -> {
+                final RepairScorer scorer = new RepairScorer();
+                return (buf, from, to, offset) -> scorer.line(buf, from, to, report);
+            }, (left, right) -> {
+                left.add(right);
+                return left;
+            });
+    }
+
+    /**
+     * This method writes a nearest repair of every bad line of a generation file to another file, one line each:
+     * line number, distance, the bad line (without its last character) and its repair, separated by tabs.
+     * @param generations the file to be examined; it may be gzip-compressed
+     * @param repairs the file to be written; it is compressed if its name ends with .gz
+     * @return the accuracy and the histograms of the distances
+     */
+    public static Report repairsToFile(File generations, File repairs) throws IOException
+    {
+        final Report report = new Report();
+        final RepairScorer scorer = new RepairScorer();
+        final long[] line_no = {0};
+        try (final Writer out = new BufferedWriter(new OutputStreamWriter(GzipPipe.create(repairs), StandardCharsets.ISO_8859_1), 1 << 16))
+        {
+            FileScorer.forEachLine(generations, (buf, from, to, offset) -> {
+                    line_no[0]++;
+                    int judgement = FileScorer.judgeLine(buf, from, to);
+                    if (judgement == BNFAutomaton.GOOD)
+                    {
+                        report.add(judgement, 0);
+                        return;
+                    }
+                    int end = FileScorer.cropLastCharacter(buf, from, to);
+                    String repair = scorer.repair(buf, from, end);
+                    int distance = scorer.insertions() + scorer.deletions() + scorer.substitutions();
+                    report.add(judgement, distance);
+                    out.write(line_no[0] + "\t" + distance + "\t" + new String(buf, from, end - from, StandardCharsets.ISO_8859_1) + "\t" + repair);
+                    out.write(System.lineSeparator());
+                });
+        }
+        return report;
+    }
+
+    /**
+     * This method prints the distance histograms of the files given on the command line.
+     * @param args [--threads n] [--repairs out-file] file ...   (--repairs writes the repairs of a single file)
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int no_of_threads = Runtime.getRuntime().availableProcessors();
+        String repairs = null;
+        int i = 0;
+        while (i + 1 < args.length && args[i].startsWith("--"))
+        {
+            if (args[i].equals("--threads"))
+            {
+                no_of_threads = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("--repairs"))
+            {
+                repairs = args[i + 1];
+            }
+            i += 2;
+        }
+        if (i >= args.length || (repairs != null && args.length - i != 1))
+        {
+            System.err.println("usage: java RepairScorer [--threads n] [--repairs out-file] file ...");
+            return;
+        }
+        for (; i < args.length; i++)
+        {
+            File file = new File(args[i]);
+            Report report = repairs == null ? score(file, no_of_threads) : repairsToFile(file, new File(repairs));
+            System.out.println(args[i]);
+            System.out.print(report);
+        }
+    }
+}
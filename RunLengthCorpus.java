@@ -0,0 +1,727 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+/**
+ * A class that keeps a corpus in a compact binary format with an offset index, so that sentence i can be read in O(1) from a
+ * memory-mapped file, and random samples and shuffled epochs of a corpus of hundreds of millions of sentences cost no more than
+ * reading the sentences themselves.
+ *
+ * The words of my language are runs of one letter with a few feature letters, so every word is encoded as one byte holding its
+ * class, run length and features:
+ *
+ *  11 rrrr g n   a noun: r+1 Ns (1 to 16), then A or B (g) and S or T (n)
+ *  10 rrrrr n    a verb: r+1 Vs (1 to 32), then S or T (n)
+ *  01 p rrrrr    r+1 Ds (p = 0) or Ps (p = 1), 1 to 32
+ *  0x01 C, 0x02 Z, 0x03 RA, 0x04 RB
+ *  0x10 + i      the single token TOKENS[i], where it does not make up a word (e.g. in a bad generation)
+ *  0x3F b        the byte b, for any other character
+ *
+ * The separators of a line are kept as flags in the index: the space & tab after the first noun (the end of the intro in the dataset format),
+ * the space at the end and a carriage return. So any text file is converted losslessly, and the sentences of ExampleBuilder
+ * take about a third of their size in text.
+ *
+ * The file holds a header of HEADER_SIZE bytes, the encoded words of all sentences, the index and the block bases. The index has
+ * an int for every sentence (and one for the end of the last): its offset relative to the base of its block of BLOCK_SIZE sentences,
+ * shifted left by 3, with the flags in the 3 lowest bits. The block bases are longs. All numbers are little-endian.
+ *
+ * Usage: java RunLengthCorpus text-file corpus-file
+ *        java RunLengthCorpus --decode [--shuffle seed] corpus-file text-file
+ *
+ * @author Tisha Anders
+ */
+public class RunLengthCorpus
+{
+    static final long MAGIC = 0x3150524F43434C52L; // "RLCCORP1", little-endian
+    static final int HEADER_SIZE = 64;
+    static final int BLOCK_SHIFT = 16;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    // the encoded sentences of one block must stay below 512 MB, so their offsets fit into the index
+    static final long MAX_BLOCK_LENGTH = 1L << 29;
+    // the file is mapped in segments of 1 GB
+    static final int SEGMENT_SHIFT = 30;
+
+    // the flags of a line
+    static final int TAB = 1;
+    static final int SPACE = 2;
+    static final int CR = 4;
+    static final int FLAG_BITS = 3;
+    // the flags of the file
+    static final long FINAL_NEWLINE = 1;
+
+    static final int NOUN = 0xC0;
+    static final int VERB = 0x80;
+    static final int DETERMINER = 0x40;
+    static final int PREPOSITION = 0x60;
+    static final int COMMA = 0x01;
+    static final int FINAL_COMMA = 0x02;
+    static final int REL_PRO_A = 0x03;
+    static final int REL_PRO_B = 0x04;
+    static final int TOKEN = 0x10;
+    static final int ESCAPE = 0x3F;
+    static final int MAX_NOUN_RUN = 16;
+    static final int MAX_RUN = 32;
+
+    // the characters every code stands for; null for the escape and unused codes
+    static final byte[][] WORDS = new byte[256][];
+
+    static
+    {
+        for (int r = 1; r <= MAX_NOUN_RUN; r++)
+        {
+            for (int features = 0; features < 4; features++)
+            {
+                WORDS[NOUN | (r - 1) << 2 | features] = word('N', r, "" + "AB".charAt(features >> 1) + "ST".charAt(features & 1));
+            }
+        }
+        for (int r = 1; r <= MAX_RUN; r++)
+        {
+            WORDS[VERB | (r - 1) << 1] = word('V', r, "S");
+            WORDS[VERB | (r - 1) << 1 | 1] = word('V', r, "T");
+            WORDS[DETERMINER | (r - 1)] = word('D', r, "");
+            WORDS[PREPOSITION | (r - 1)] = word('P', r, "");
+        }
+        WORDS[COMMA] = word('C', 1, "");
+        WORDS[FINAL_COMMA] = word('Z', 1, "");
+        WORDS[REL_PRO_A] = word('R', 1, "A");
+        WORDS[REL_PRO_B] = word('R', 1, "B");
+        for (int i = 0; i < BNFAutomaton.TOKENS.length(); i++)
+        {
+            WORDS[TOKEN + i] = word(BNFAutomaton.TOKENS.charAt(i), 1, "");
+        }
+    }
+
+    static byte[] word(char letter, int run, String features)
+    {
+        byte[] word = new byte[run + features.length()];
+        java.util.Arrays.fill(word, 0, run, (byte) letter);
+        for (int i = 0; i < features.length(); i++)
+        {
+            word[run + i] = (byte) features.charAt(i);
+        }
+        return word;
+    }
+
+    /**
+     * A region of a file, memory-mapped in segments of 1 << SEGMENT_SHIFT bytes. Reads are absolute, so a region can be shared by threads.
+     */
+    static class Region
+    {
+        final ByteBuffer[] segments;
+
+        Region(FileChannel channel, long offset, long length) throws IOException
+        {
+            segments = new ByteBuffer[(int) ((length >>> SEGMENT_SHIFT) + 1)];
+            for (int i = 0; i < segments.length; i++)
+            {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, Math.min(length - start, 1L << SEGMENT_SHIFT))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        byte get(long position)
+        {
+            return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) position & ((1 << SEGMENT_SHIFT) - 1));
+        }
+
+        // ints and longs are aligned to their size within the region, so they never cross a segment
+        int getInt(long position)
+        {
+            return segments[(int) (position >>> SEGMENT_SHIFT)].getInt((int) position & ((1 << SEGMENT_SHIFT) - 1));
+        }
+
+        long getLong(long position)
+        {
+            return segments[(int) (position >>> SEGMENT_SHIFT)].getLong((int) position & ((1 << SEGMENT_SHIFT) - 1));
+        }
+    }
+
+    final long no_of_sentences;
+    final long data_length;
+    final int longest_line;
+    final boolean final_newline;
+    final long file_length;
+    final Region data;
+    final Region index;
+    final Region bases;
+
+    RunLengthCorpus(FileChannel channel, ByteBuffer header) throws IOException
+    {
+        no_of_sentences = header.getLong(8);
+        data_length = header.getLong(16);
+        long index_offset = header.getLong(24);
+        long bases_offset = header.getLong(32);
+        longest_line = (int) header.getLong(40);
+        final_newline = (header.getLong(48) & FINAL_NEWLINE) != 0;
+        file_length = channel.size();
+        long no_of_bases = (no_of_sentences >>> BLOCK_SHIFT) + 1;
+        if (no_of_sentences < 0 || index_offset != HEADER_SIZE + data_length || bases_offset != index_offset + (no_of_sentences + 1) * 4
+            || file_length != bases_offset + no_of_bases * 8 || longest_line < 0)
+        {
+            throw new IOException("the corpus is damaged");
+        }
+        data = new Region(channel, HEADER_SIZE, data_length);
+        index = new Region(channel, index_offset, (no_of_sentences + 1) * 4);
+        bases = new Region(channel, bases_offset, no_of_bases * 8);
+    }
+
+    /**
+     * This method memory-maps a corpus written by a Writer.
+     */
+    public static RunLengthCorpus open(File file) throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel())
+        {
+            if (raf.length() < HEADER_SIZE)
+            {
+                throw new IOException(file + " is not a run-length corpus");
+            }
+            byte[] bytes = new byte[HEADER_SIZE];
+            raf.readFully(bytes);
+            ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getLong(0) != MAGIC)
+            {
+                throw new IOException(file + " is not a run-length corpus");
+            }
+            try
+            {
+                return new RunLengthCorpus(channel, header);
+            }
+            catch (IOException e)
+            {
+                throw new IOException(file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the number of sentences
+     */
+    public long size()
+    {
+        return no_of_sentences;
+    }
+
+    /**
+     * @return the length of the longest line in characters, without the line terminator
+     */
+    public int longestLine()
+    {
+        return longest_line;
+    }
+
+    /**
+     * @return the size of the file in bytes
+     */
+    public long fileLength()
+    {
+        return file_length;
+    }
+
+    /**
+     * @return the number of bytes of the encoded words
+     */
+    public long dataLength()
+    {
+        return data_length;
+    }
+
+    int entry(long i)
+    {
+        return index.getInt(i * 4);
+    }
+
+    long offset(long i)
+    {
+        return bases.getLong((i >>> BLOCK_SHIFT) * 8) + (entry(i) >>> FLAG_BITS);
+    }
+
+    /**
+     * This method decodes sentence i into a buffer, with its separators but without the line terminator.
+     * @param i the number of the sentence, from 0
+     * @param buf the buffer; it must have room for longestLine() bytes from pos
+     * @param pos the index the sentence starts at
+     * @return the index after the last byte of the sentence
+     */
+    public int sentence(long i, byte[] buf, int pos)
+    {
+        if (i < 0 || i >= no_of_sentences)
+        {
+            throw new IndexOutOfBoundsException("sentence " + i + " of " + no_of_sentences);
+        }
+        int flags = entry(i) & ((1 << FLAG_BITS) - 1);
+        long end = offset(i + 1);
+        boolean tab = (flags & TAB) != 0;
+        for (long p = offset(i); p < end; p++)
+        {
+            int code = data.get(p) & 0xFF;
+            if (code == ESCAPE)
+            {
+                buf[pos++] = data.get(++p);
+            }
+            else
+            {
+                byte[] word = WORDS[code];
+                if (word == null)
+                {
+                    throw new IllegalStateException("sentence " + i + " has the unknown code " + code);
+                }
+                System.arraycopy(word, 0, buf, pos, word.length);
+                pos += word.length;
+            }
+            if (tab && (code & NOUN) == NOUN)
+            {
+                buf[pos++] = ' ';
+                buf[pos++] = '\t';
+                tab = false;
+            }
+        }
+        if ((flags & SPACE) != 0)
+        {
+            buf[pos++] = ' ';
+        }
+        if ((flags & CR) != 0)
+        {
+            buf[pos++] = '\r';
+        }
+        return pos;
+    }
+
+    /**
+     * This method decodes sentence i.
+     * @param i the number of the sentence, from 0
+     * @return the sentence with its separators, without the line terminator
+     */
+    public String sentence(long i)
+    {
+        byte[] buf = new byte[longest_line];
+        return new String(buf, 0, sentence(i, buf, 0), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * This method draws the number of a sentence uniformly at random (with replacement), reproducibly.
+     * @param seed the seed of the sample
+     * @param k the number of the draw
+     * @return the number of the sentence drawn k-th
+     */
+    public long randomIndex(long seed, long k)
+    {
+        // the remainder is biased by less than size() / 2^64
+        return Long.remainderUnsigned(SentenceGenerator.mix(seed + (k + 1) * SentenceGenerator.GOLDEN_GAMMA), no_of_sentences);
+    }
+
+    /**
+     * This method gives the order of the sentences in one epoch of training: a different random permutation for every epoch.
+     */
+    public Shuffle shuffle(long seed, long epoch)
+    {
+        return new Shuffle(no_of_sentences, SentenceGenerator.mix(seed + (epoch + 1) * SentenceGenerator.GOLDEN_GAMMA));
+    }
+
+    /**
+     * A random permutation of 0 ... n-1 that is computed, not stored, so it takes no memory and any position is found in O(1).
+     * It is a Feistel network of ROUNDS rounds on the numbers of 2 * half_bits bits (the smallest such range that holds n, so at most
+     * 4n), and a result of n or more is permuted again until it is below n (cycle walking), which takes fewer than 4 steps on average.
+     */
+    public static class Shuffle
+    {
+        static final int ROUNDS = 4;
+
+        final long n;
+        final int half_bits;
+        final long half_mask;
+        final long[] keys = new long[ROUNDS];
+
+        /**
+         * @param n the number of elements
+         * @param seed the seed of the permutation
+         */
+        public Shuffle(long n, long seed)
+        {
+            if (n <= 0)
+            {
+                throw new IllegalArgumentException("nothing to shuffle: " + n);
+            }
+            int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(n - 1));
+            half_bits = (bits + 1) / 2;
+            half_mask = half_bits == 32 ? 0xFFFFFFFFL : (1L << half_bits) - 1;
+            this.n = n;
+            for (int r = 0; r < ROUNDS; r++)
+            {
+                keys[r] = SentenceGenerator.mix(seed + (r + 1) * SentenceGenerator.GOLDEN_GAMMA);
+            }
+        }
+
+        long permute(long x)
+        {
+            long left = x >>> half_bits;
+            long right = x & half_mask;
+            for (int r = 0; r < ROUNDS; r++)
+            {
+                long next = left ^ (SentenceGenerator.mix(right ^ keys[r]) & half_mask);
+                left = right;
+                right = next;
+            }
+            return left << half_bits | right;
+        }
+
+        /**
+         * @param k a position, 0 ... n-1
+         * @return the element at position k
+         */
+        public long index(long k)
+        {
+            if (k < 0 || k >= n)
+            {
+                throw new IndexOutOfBoundsException("position " + k + " of " + n);
+            }
+            long x = permute(k);
+            while (Long.compareUnsigned(x, n) >= 0)
+            {
+                x = permute(x);
+            }
+            return x;
+        }
+    }
+
+    /**
+     * This method writes the sentences to a text file, each followed by a newline; gzip-compressed if text ends with .gz.
+     * In file order, the text file is the one the corpus was converted from.
+     * @param text the file to be written
+     * @param order the order of the sentences, or null for file order
+     */
+    public void toText(File text, Shuffle order) throws IOException
+    {
+        byte[] buf = new byte[longest_line + 1];
+        try (OutputStream out = text.getName().endsWith(".gz") ? GzipPipe.create(text) : new BufferedOutputStream(new FileOutputStream(text), 1 << 16))
+        {
+            for (long k = 0; k < no_of_sentences; k++)
+            {
+                int end = sentence(order == null ? k : order.index(k), buf, 0);
+                if (k + 1 < no_of_sentences || final_newline || order != null)
+                {
+                    buf[end++] = '\n';
+                }
+                out.write(buf, 0, end);
+            }
+        }
+    }
+
+    /**
+     * A class that writes a corpus, one line at a time. The words are streamed to the file and the index to a temporary file,
+     * which is appended when the corpus is closed; only the block bases (a long per BLOCK_SIZE sentences) are kept in memory.
+     */
+    public static class Writer implements AutoCloseable
+    {
+        final File file;
+        final File index_file;
+        final OutputStream out;
+        final OutputStream index_out;
+        final byte[] code = new byte[2 * 4096];
+        final byte[] entry = new byte[4];
+        long[] bases = new long[16];
+        long no_of_sentences;
+        long position;
+        int longest_line;
+        // whether the last line was followed by a newline; only false for text files without one
+        boolean final_newline = true;
+
+        /**
+         * @param file the corpus to be written
+         */
+        public Writer(File file) throws IOException
+        {
+            this.file = file;
+            this.index_file = new File(file.getPath() + ".index.tmp");
+            out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+            out.write(new byte[HEADER_SIZE]);
+            index_out = new BufferedOutputStream(new FileOutputStream(index_file), 1 << 16);
+        }
+
+        /**
+         * This method starts the next sentence at the current position: it adds its entry to the index.
+         */
+        void entry(int flags) throws IOException
+        {
+            int block = (int) (no_of_sentences >>> BLOCK_SHIFT);
+            if ((no_of_sentences & (BLOCK_SIZE - 1)) == 0)
+            {
+                if (block == bases.length)
+                {
+                    bases = java.util.Arrays.copyOf(bases, bases.length * 2);
+                }
+                bases[block] = position;
+            }
+            long relative = position - bases[block];
+            if (relative >= MAX_BLOCK_LENGTH)
+            {
+                throw new IOException("the sentences " + ((long) block << BLOCK_SHIFT) + " to " + no_of_sentences + " take more than "
+                    + MAX_BLOCK_LENGTH + " bytes");
+            }
+            int value = (int) (relative << FLAG_BITS) | flags;
+            entry[0] = (byte) value;
+            entry[1] = (byte) (value >>> 8);
+            entry[2] = (byte) (value >>> 16);
+            entry[3] = (byte) (value >>> 24);
+            index_out.write(entry);
+        }
+
+        /**
+         * This method encodes one line and appends it to the corpus.
+         * @param buf the buffer holding the line
+         * @param from index of the first byte of the line
+         * @param to index after the last byte of the line, excluding the newline
+         */
+        public void line(byte[] buf, int from, int to) throws IOException
+        {
+            longest_line = Math.max(longest_line, to - from);
+            int flags = 0;
+            if (to > from && buf[to - 1] == '\r')
+            {
+                flags |= CR;
+                to--;
+            }
+            if (to > from && buf[to - 1] == ' ')
+            {
+                flags |= SPACE;
+                to--;
+            }
+            byte[] code = to - from <= this.code.length / 2 ? this.code : new byte[2 * (to - from)];
+            int n = 0;
+            int i = from;
+            boolean first_noun = true;
+            while (i < to)
+            {
+                int c = buf[i];
+                int run = 1;
+                while (i + run < to && buf[i + run] == c)
+                {
+                    run++;
+                }
+                if (c == 'N' && run <= MAX_NOUN_RUN && i + run + 1 < to && (buf[i + run] == 'A' || buf[i + run] == 'B')
+                    && (buf[i + run + 1] == 'S' || buf[i + run + 1] == 'T'))
+                {
+                    code[n++] = (byte) (NOUN | (run - 1) << 2 | (buf[i + run] == 'B' ? 2 : 0) | (buf[i + run + 1] == 'T' ? 1 : 0));
+                    i += run + 2;
+                    if (first_noun && i + 1 < to && buf[i] == ' ' && buf[i + 1] == '\t')
+                    {
+                        flags |= TAB;
+                        i += 2;
+                    }
+                    first_noun = false;
+                }
+                else if (c == 'V' && run <= MAX_RUN && i + run < to && (buf[i + run] == 'S' || buf[i + run] == 'T'))
+                {
+                    code[n++] = (byte) (VERB | (run - 1) << 1 | (buf[i + run] == 'T' ? 1 : 0));
+                    i += run + 1;
+                }
+                else if (c == 'D' || c == 'P')
+                {
+                    run = Math.min(run, MAX_RUN);
+                    code[n++] = (byte) ((c == 'D' ? DETERMINER : PREPOSITION) | (run - 1));
+                    i += run;
+                }
+                else if (c == 'R' && i + 1 < to && (buf[i + 1] == 'A' || buf[i + 1] == 'B'))
+                {
+                    code[n++] = (byte) (buf[i + 1] == 'A' ? REL_PRO_A : REL_PRO_B);
+                    i += 2;
+                }
+                else if (c == 'C' || c == 'Z')
+                {
+                    code[n++] = (byte) (c == 'C' ? COMMA : FINAL_COMMA);
+                    i++;
+                }
+                else if (c >= 0 && BNFAutomaton.TOKENS.indexOf(c) >= 0)
+                {
+                    // letters that do not make up a word: the Ns or Vs before the longest run that fits into a word (which is tried
+                    // again), a run without its features, or a single feature letter
+                    int max_run = c == 'N' ? MAX_NOUN_RUN : MAX_RUN;
+                    int k = c != 'N' && c != 'V' ? 1 : run > max_run ? run - max_run : run;
+                    for (int j = 0; j < k; j++)
+                    {
+                        code[n++] = (byte) (TOKEN + BNFAutomaton.TOKENS.indexOf(c));
+                    }
+                    i += k;
+                }
+                else
+                {
+                    code[n++] = (byte) ESCAPE;
+                    code[n++] = (byte) c;
+                    i++;
+                }
+            }
+            entry(flags);
+            out.write(code, 0, n);
+            position += n;
+            no_of_sentences++;
+        }
+
+        /**
+         * @return the number of sentences written so far
+         */
+        public long size()
+        {
+            return no_of_sentences;
+        }
+
+        /**
+         * This method appends the index and writes the header.
+         */
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                entry(0);
+                index_out.close();
+                out.close();
+                long no_of_bases = (no_of_sentences >>> BLOCK_SHIFT) + 1;
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel();
+                     FileInputStream index_in = new FileInputStream(index_file); FileChannel index_channel = index_in.getChannel())
+                {
+                    long index_offset = HEADER_SIZE + position;
+                    long copied = 0;
+                    while (copied < index_channel.size())
+                    {
+                        copied += index_channel.transferTo(copied, index_channel.size() - copied, channel.position(index_offset + copied));
+                    }
+                    ByteBuffer bb = ByteBuffer.allocate((int) no_of_bases * 8).order(ByteOrder.LITTLE_ENDIAN);
+                    for (int b = 0; b < no_of_bases; b++)
+                    {
+                        bb.putLong(bases[b]);
+                    }
+                    bb.flip();
+                    long bases_offset = index_offset + index_channel.size();
+                    while (bb.hasRemaining())
+                    {
+                        channel.write(bb, bases_offset + bb.position());
+                    }
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                    header.putLong(MAGIC).putLong(no_of_sentences).putLong(position).putLong(index_offset).putLong(bases_offset)
+                        .putLong(longest_line).putLong(final_newline ? FINAL_NEWLINE : 0).putLong(0);
+                    header.flip();
+                    while (header.hasRemaining())
+                    {
+                        channel.write(header, header.position());
+                    }
+                }
+            }
+            finally
+            {
+                index_out.close();
+                out.close();
+                index_file.delete();
+            }
+        }
+    }
+
+    /**
+     * This method converts a text file (gzip-compressed or not) into a corpus, losslessly.
+     * @param text the file to be converted
+     * @param file the corpus to be written
+     * @return the number of sentences
+     */
+    public static long fromText(File text, File file) throws IOException
+    {
+        Writer writer = new Writer(file);
+        try (InputStream in = GzipPipe.isGzip(text) ? GzipPipe.open(text) : new FileInputStream(text))
+        {
+            // the lines are cut here rather than by FileScorer.forEachLine, which drops carriage returns
+            byte[] buf = new byte[1 << 16];
+            int filled = 0;
+            int n;
+            while ((n = in.read(buf, filled, buf.length - filled)) >= 0)
+            {
+                filled += n;
+                int start = 0;
+                for (int i = filled - n; i < filled; i++)
+                {
+                    if (buf[i] == '\n')
+                    {
+                        writer.line(buf, start, i);
+                        start = i + 1;
+                    }
+                }
+                if (start == 0 && filled == buf.length)
+                {
+                    buf = java.util.Arrays.copyOf(buf, buf.length * 2); // a line longer than the buffer
+                }
+                else
+                {
+                    System.arraycopy(buf, start, buf, 0, filled - start);
+                    filled -= start;
+                }
+            }
+            if (filled > 0)
+            {
+                writer.line(buf, 0, filled);
+                writer.final_newline = false;
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+        return writer.size();
+    }
+
+    /**
+     * This method converts a text file into a corpus, or a corpus back into a text file (in file order or shuffled).
+     * @param args text-file corpus-file, or --decode [--shuffle seed] corpus-file text-file
+     */
+    public static void main(String[] args) throws IOException
+    {
+        boolean decode = false;
+        Long seed = null;
+        int i = 0;
+        while (i < args.length && args[i].startsWith("--"))
+        {
+            if (args[i].equals("--decode"))
+            {
+                decode = true;
+                i++;
+            }
+            else if (args[i].equals("--shuffle") && i + 1 < args.length)
+            {
+                seed = Long.parseLong(args[i + 1]);
+                i += 2;
+            }
+            else
+            {
+                break;
+            }
+        }
+        if (args.length - i != 2 || (seed != null && !decode))
+        {
+            System.err.println("usage: java RunLengthCorpus text-file corpus-file");
+            System.err.println("       java RunLengthCorpus --decode [--shuffle seed] corpus-file text-file");
+            return;
+        }
+        long start = System.nanoTime();
+        File text = new File(args[decode ? i + 1 : i]);
+        File file = new File(args[decode ? i : i + 1]);
+        if (decode)
+        {
+            RunLengthCorpus corpus = open(file);
+            corpus.toText(text, seed == null || corpus.size() == 0 ? null : corpus.shuffle(seed, 0));
+        }
+        else
+        {
+            fromText(text, file);
+        }
+        RunLengthCorpus corpus = open(file);
+        System.out.println(String.format(Locale.ROOT, "%d sentences, %d bytes (%d bytes of words, %d bytes of index), %.1f s",
+                corpus.size(), corpus.fileLength(), corpus.dataLength(), corpus.fileLength() - HEADER_SIZE - corpus.dataLength(),
+                (System.nanoTime() - start) / 1e9));
+    }
+}
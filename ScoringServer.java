@@ -0,0 +1,207 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+/**
+ * A long-running scoring service, so that the training loop does not pay for JVM startup and JIT warm-up every time it scores a batch.
+ * It reads batches of sentences from stdin (java ScoringServer) or from connections to a localhost port (java ScoringServer --port 5005)
+ * and answers every batch with one line.
+ *
+ * Protocol: a batch is a line with the number of its sentences, followed by the sentences, one per line. Every sentence is judged like a
+ * line of a generation file by FileScorer.judgeLine, i.e. its last character (the space before the newline) is cropped, and an empty
+ * sentence has bad word order. The answer is
+ *
+ *  no_of_tested no_of_good_order no_of_good word_order_percentage percentage judgements
+ *
+ * where judgements has one digit per sentence, in the order of the batch: 2 = word order & agreement correct, 1 = only word order correct, 0 = word order incorrect.
+ * The connection (or stdin) is closed by the client when it is done. scoring_client.py is a client for the Python sampler.
+ *
+ * @author Tisha Anders
+ */
+public class ScoringServer
+{
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * This method starts the server.
+     * @param args nothing to serve stdin/stdout, or --port followed by the port to listen on at localhost
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length >= 2 && args[0].equals("--port"))
+        {
+            listen(Integer.parseInt(args[1]));
+        }
+        else
+        {
+            serve(System.in, System.out);
+        }
+    }
+
+    /**
+     * This method accepts connections on a localhost port and serves each of them on its own thread.
+     * @param port the port to listen on
+     */
+    public static void listen(int port) throws IOException
+    {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress()))
+        {
+            while (true)
+            {
+                final Socket socket = server.accept();
+                pool.execute(() -> {
+                        try (Socket s = socket)
+                        {
+                            s.setTcpNoDelay(true);
+                            serve(s.getInputStream(), s.getOutputStream());
+                        }
+                        catch (IOException e)
+                        {
+                            System.err.println("ScoringServer: " + e);
+                        }
+                    });
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * This method answers batches from an input stream until it ends.
+     * @param in the batches of sentences
+     * @param raw_out where the answers are written
+     */
+    public static void serve(InputStream in, OutputStream raw_out) throws IOException
+    {
+        OutputStream out = new BufferedOutputStream(raw_out, BUFFER_SIZE);
+        byte[] buf = new byte[BUFFER_SIZE];
+        int filled = 0;
+        int start = 0;
+        int scanned = 0;
+        Batch batch = new Batch();
+        long remaining = -1; // the number of sentences still to come in the current batch, -1 before its first line
+        while (true)
+        {
+            int n = in.read(buf, filled, buf.length - filled);
+            if (n < 0)
+            {
+                // the client is done, maybe in the middle of a batch: answer for the sentences that came
+                if (remaining > 0)
+                {
+                    if (start < filled)
+                    {
+                        batch.add(FileScorer.judgeLine(buf, start, FileScorer.stripCarriageReturn(buf, start, filled)));
+                    }
+                    batch.answer(out);
+                }
+                out.flush();
+                return;
+            }
+            filled += n;
+            for (int i = scanned; i < filled; i++)
+            {
+                if (buf[i] == '\n')
+                {
+                    int end = FileScorer.stripCarriageReturn(buf, start, i);
+                    if (remaining < 0)
+                    {
+                        remaining = count(buf, start, end);
+                    }
+                    else
+                    {
+                        batch.add(FileScorer.judgeLine(buf, start, end));
+                        remaining--;
+                    }
+                    if (remaining == 0)
+                    {
+                        batch.answer(out);
+                        remaining = -1;
+                    }
+                    start = i + 1;
+                }
+            }
+            out.flush();
+            if (start == 0 && filled == buf.length)
+            {
+                buf = java.util.Arrays.copyOf(buf, buf.length * 2);
+            }
+            else
+            {
+                System.arraycopy(buf, start, buf, 0, filled - start);
+                filled -= start;
+                start = 0;
+            }
+            scanned = filled;
+        }
+    }
+
+    /**
+     * This method reads the first line of a batch.
+     * @return the number of sentences in the batch
+     */
+    static long count(byte[] buf, int from, int to) throws IOException
+    {
+        String line = new String(buf, from, to - from, "US-ASCII").trim();
+        try
+        {
+            long count = Long.parseLong(line);
+            if (count >= 0)
+            {
+                return count;
+            }
+        }
+        catch (NumberFormatException e)
+        {
+        }
+        throw new IOException("a batch must start with the number of its sentences, not \"" + line + "\"");
+    }
+
+    /**
+     * The counts and judgements of the current batch.
+     */
+    static class Batch
+    {
+        long no_of_tested_gens;
+        long no_of_good_order_gens;
+        long no_of_good_gens;
+        byte[] judgements = new byte[1024];
+
+        void add(int judgement)
+        {
+            if (no_of_tested_gens == judgements.length)
+            {
+                judgements = java.util.Arrays.copyOf(judgements, judgements.length * 2);
+            }
+            judgements[(int) no_of_tested_gens++] = (byte) ('0' + judgement);
+            if (judgement != BNFAutomaton.BAD_WORD_ORDER)
+            {
+                no_of_good_order_gens++;
+            }
+            if (judgement == BNFAutomaton.GOOD)
+            {
+                no_of_good_gens++;
+            }
+        }
+
+        void answer(OutputStream out) throws IOException
+        {
+            double word_order_percentage = no_of_tested_gens == 0 ? 0 : no_of_good_order_gens * 100.0 / no_of_tested_gens;
+            double percentage = no_of_tested_gens == 0 ? 0 : no_of_good_gens * 100.0 / no_of_tested_gens;
+            String head = no_of_tested_gens + " " + no_of_good_order_gens + " " + no_of_good_gens + " " + word_order_percentage + " " + percentage + " ";
+            out.write(head.getBytes("US-ASCII"));
+            out.write(judgements, 0, (int) no_of_tested_gens);
+            out.write('\n');
+            no_of_tested_gens = 0;
+            no_of_good_order_gens = 0;
+            no_of_good_gens = 0;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * A class that generates the sentences of ExampleBuilder directly as ASCII bytes, with the same distribution and format
+ * (intro + space + tab + rel_clauses + outro + space).
+ * Every sentence has an index, and all its random choices are drawn from a small generator seeded from the seed and that index only.
+ * Sentence i is therefore the same no matter which thread generates it or in which order, so a file can be generated in shards
+ * and still be reproduced bit for bit from its seed.
+ * Without the dataset format, only the tokens are written, i.e. the sentence as the parsers expect it.
+ * The bounds of the words and the number of relative clauses come from a Grammar (by default Grammar.DEFAULT).
+ *
+ * @author Tisha Anders
+ */
+public class SentenceGenerator
+{
+    // an upper bound on the length of one sentence of the default grammar, excluding the line separator
+    public static final int MAX_SENTENCE_LENGTH = 160;
+
+    static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    final long seed;
+    final boolean dataset_format;
+    final Grammar grammar;
+    long state;
+
+    // positions in the last sentence, only recorded if record is set (for NegativeExampleGenerator)
+    boolean record;
+    int[] commas;
+    int[] verbs;
+    int[] run_starts;
+    int[] run_lengths;
+    int no_of_clauses;
+    int no_of_runs;
+    int final_verb;
+
+    /**
+     * @param seed the seed of the whole set of sentences
+     */
+    public SentenceGenerator(long seed)
+    {
+        this(seed, true);
+    }
+
+    /**
+     * @param seed the seed of the whole set of sentences
+     * @param dataset_format whether to write the space & tab after the intro and the space at the end, as ExampleBuilder does
+     */
+    public SentenceGenerator(long seed, boolean dataset_format)
+    {
+        this(seed, dataset_format, Grammar.DEFAULT);
+    }
+
+    /**
+     * @param seed the seed of the whole set of sentences
+     * @param dataset_format whether to write the space & tab after the intro and the space at the end, as ExampleBuilder does
+     * @param grammar the bounds of the sentences
+     */
+    public SentenceGenerator(long seed, boolean dataset_format, Grammar grammar)
+    {
+        this.seed = seed;
+        this.dataset_format = dataset_format;
+        this.grammar = grammar;
+    }
+
+    /**
+     * @return an upper bound on the length of one sentence, excluding the line separator
+     */
+    public int maxSentenceLength()
+    {
+        return Math.max(MAX_SENTENCE_LENGTH, grammar.maxSentenceLength());
+    }
+
+    /**
+     * This method makes the generator record the positions of the commas, verbs and runs of every sentence, until it is switched off again.
+     * The relative pronoun of clause i follows its comma at commas[i] + 2.
+     */
+    void record(boolean on)
+    {
+        if (on && commas == null)
+        {
+            commas = new int[grammar.max_clauses];
+            verbs = new int[grammar.max_clauses];
+            run_starts = new int[maxSentenceLength()];
+            run_lengths = new int[maxSentenceLength()];
+        }
+        record = on;
+    }
+
+    /**
+     * This method mixes the bits of a long (the finaliser of SplitMix64).
+     */
+    static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * This method starts the random choices of sentence number index.
+     */
+    void seekSentence(long index)
+    {
+        state = mix(seed + (index + 1) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * This method draws a random number between 0 and bound-1.
+     */
+    int nextInt(int bound)
+    {
+        state += GOLDEN_GAMMA;
+        return (int) (((mix(state) >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * This method writes a run of between min and max copies of a token.
+     * @return the new end of the sentence
+     */
+    int run(byte[] buf, int pos, byte token, int min, int max)
+    {
+        int n = min + nextInt(max - min + 1);
+        if (record && n > 0)
+        {
+            run_starts[no_of_runs] = pos;
+            run_lengths[no_of_runs++] = n;
+        }
+        for (int i = 0; i < n; i++)
+        {
+            buf[pos++] = token;
+        }
+        return pos;
+    }
+
+    /**
+     * This method writes a noun, NN...N + (A or B) + (S or T).
+     * @return the new end of the sentence
+     */
+    int noun(byte[] buf, int pos)
+    {
+        pos = run(buf, pos, (byte) 'N', grammar.min_n, grammar.max_n);
+        buf[pos++] = nextInt(2) == 0 ? (byte) 'A' : (byte) 'B';
+        buf[pos++] = nextInt(2) == 0 ? (byte) 'S' : (byte) 'T';
+        return pos;
+    }
+
+    /**
+     * This method writes sentence number index.
+     * @param index the number of the sentence
+     * @param buf the buffer, with room for maxSentenceLength() bytes at pos
+     * @param pos where to write the sentence
+     * @return the end of the sentence in buf
+     */
+    public int sentence(long index, byte[] buf, int pos)
+    {
+        seekSentence(index);
+        no_of_runs = 0;
+        // intro
+        pos = run(buf, pos, (byte) 'D', grammar.min_d, grammar.max_d);
+        pos = run(buf, pos, (byte) 'P', grammar.min_p, grammar.max_p);
+        pos = noun(buf, pos);
+        byte subject_s = buf[pos - 1];
+        byte last_noun_a = buf[pos - 2];
+        byte last_noun_s = subject_s;
+        if (dataset_format)
+        {
+            buf[pos++] = ' ';
+            buf[pos++] = '\t';
+        }
+        // between min_clauses and max_clauses relative clauses, each agreeing with the noun in front of it
+        int n_rel_clauses = grammar.min_clauses + nextInt(grammar.max_clauses - grammar.min_clauses + 1);
+        no_of_clauses = n_rel_clauses;
+        for (int i = 0; i < n_rel_clauses; i++)
+        {
+            if (record)
+            {
+                commas[i] = pos;
+            }
+            buf[pos++] = 'C';
+            buf[pos++] = 'R';
+            buf[pos++] = last_noun_a;
+            pos = run(buf, pos, (byte) 'V', grammar.min_v, grammar.max_v);
+            if (record)
+            {
+                verbs[i] = pos;
+            }
+            buf[pos++] = last_noun_s;
+            pos = run(buf, pos, (byte) 'P', grammar.min_p, grammar.max_p);
+            pos = noun(buf, pos);
+            last_noun_a = buf[pos - 2];
+            last_noun_s = buf[pos - 1];
+            pos = run(buf, pos, (byte) 'P', grammar.min_p, grammar.max_p);
+        }
+        // outro, agreeing with the subject
+        buf[pos++] = 'Z';
+        pos = run(buf, pos, (byte) 'V', grammar.min_v, grammar.max_v);
+        final_verb = pos;
+        buf[pos++] = subject_s;
+        pos = run(buf, pos, (byte) 'D', grammar.min_d, grammar.max_d);
+        pos = run(buf, pos, (byte) 'P', grammar.min_p, grammar.max_p);
+        pos = noun(buf, pos);
+        if (dataset_format)
+        {
+            buf[pos++] = ' ';
+        }
+        return pos;
+    }
+}
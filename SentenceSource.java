@@ -0,0 +1,310 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+/**
+ * A class that feeds generated sentences to a consumer in the same process, without creating a String per sentence or writing them to disk.
+ * Sentences can be pulled one at a time into a caller's byte[], char[] or ByteBuffer, or pushed to a SentenceConsumer.
+ *
+ * By default the sentences are generated on the caller's thread. After start(no_of_blocks), a background thread generates them into
+ * a fixed number of reusable blocks. When all blocks are full, the producer waits until the consumer has emptied one, so a slow
+ * consumer cannot make the heap grow.
+ *
+ * @author Tisha Anders
+ */
+public class SentenceSource implements AutoCloseable
+{
+    // number of sentences in one block of the background producer
+    static final int SENTENCES_PER_BLOCK = 4096;
+
+    /**
+     * Receives generated sentences. The bytes of a sentence are only valid during the call.
+     */
+    public interface SentenceConsumer
+    {
+        /**
+         * @param buf the buffer holding the sentence
+         * @param from index of the first byte of the sentence
+         * @param to index after the last byte of the sentence
+         */
+        void sentence(byte[] buf, int from, int to) throws IOException;
+    }
+
+    /**
+     * A block of sentences, reused by the background producer. A block without sentences marks the end.
+     */
+    static class Block
+    {
+        final byte[] buf = new byte[SENTENCES_PER_BLOCK * SentenceGenerator.MAX_SENTENCE_LENGTH];
+        final int[] ends = new int[SENTENCES_PER_BLOCK];
+        int no_of_sentences;
+        int next;
+    }
+
+    final SentenceGenerator generator;
+    final byte[] scratch = new byte[SentenceGenerator.MAX_SENTENCE_LENGTH];
+    long next_index;
+    final long end_index;
+
+    // background producer
+    BlockingQueue<Block> full_blocks;
+    BlockingQueue<Block> free_blocks;
+    Block current;
+    Thread producer;
+    volatile Throwable failure;
+
+    /**
+     * @param seed the seed of the sentences (the same as for ExampleBuilder.toFile)
+     * @param count the number of sentences
+     * @param dataset_format whether sentences have the space & tab after the intro and the space at the end
+     */
+    public SentenceSource(long seed, long count, boolean dataset_format)
+    {
+        this(seed, 0, count, dataset_format);
+    }
+
+    /**
+     * @param seed the seed of the sentences (the same as for ExampleBuilder.toFile)
+     * @param first the number of the first sentence
+     * @param count the number of sentences
+     * @param dataset_format whether sentences have the space & tab after the intro and the space at the end
+     */
+    public SentenceSource(long seed, long first, long count, boolean dataset_format)
+    {
+        this.generator = new SentenceGenerator(seed, dataset_format);
+        this.next_index = first;
+        this.end_index = first + count;
+    }
+
+    /**
+     * This method starts a background thread that generates the sentences ahead of the consumer.
+     * @param no_of_blocks the number of blocks of SENTENCES_PER_BLOCK sentences that may be waiting for the consumer
+     * @return this source
+     */
+    public synchronized SentenceSource start(int no_of_blocks)
+    {
+        if (producer != null)
+        {
+            return this;
+        }
+        full_blocks = new ArrayBlockingQueue<Block>(no_of_blocks + 1);
+        free_blocks = new ArrayBlockingQueue<Block>(no_of_blocks + 1);
+        for (int i = 0; i < no_of_blocks + 1; i++)
+        {
+            free_blocks.add(new Block());
+        }
+        final long first = next_index;
+        producer = new Thread(() -> produce(first), "SentenceSource");
+        producer.setDaemon(true);
+        producer.start();
+        return this;
+    }
+
+    void produce(long first)
+    {
+        try
+        {
+            long index = first;
+            while (true)
+            {
+                Block block = free_blocks.take();
+                int pos = 0;
+                int k = 0;
+                for (; k < SENTENCES_PER_BLOCK && index < end_index; k++, index++)
+                {
+                    pos = generator.sentence(index, block.buf, pos);
+                    block.ends[k] = pos;
+                }
+                block.no_of_sentences = k;
+                block.next = 0;
+                full_blocks.put(block);
+                if (k == 0)
+                {
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // closed by the consumer
+        }
+        catch (RuntimeException | Error e)
+        {
+            failure = e;
+            Block end = new Block();
+            full_blocks.offer(end);
+        }
+    }
+
+    /**
+     * This method takes the next block from the producer when the current one is used up.
+     * @return false if there are no more sentences
+     */
+    boolean nextBlock()
+    {
+        if (current != null && current.next < current.no_of_sentences)
+        {
+            return true;
+        }
+        if (current != null && current.no_of_sentences == 0)
+        {
+            return false;
+        }
+        try
+        {
+            if (current != null)
+            {
+                free_blocks.put(current);
+            }
+            current = full_blocks.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for sentences", e);
+        }
+        if (failure != null)
+        {
+            throw new IllegalStateException("sentence generation failed", failure);
+        }
+        return current.no_of_sentences > 0;
+    }
+
+    /**
+     * This method writes the next sentence into the scratch buffer, or takes it from the current block.
+     * @return the length of the sentence, or -1 if there are no more sentences
+     */
+    int nextSentence()
+    {
+        if (producer == null)
+        {
+            if (next_index >= end_index)
+            {
+                return -1;
+            }
+            return generator.sentence(next_index++, scratch, 0);
+        }
+        if (!nextBlock())
+        {
+            return -1;
+        }
+        int from = current.next == 0 ? 0 : current.ends[current.next - 1];
+        int to = current.ends[current.next++];
+        System.arraycopy(current.buf, from, scratch, 0, to - from);
+        next_index++;
+        return to - from;
+    }
+
+    /**
+     * This method writes the next sentence into a byte array.
+     * @param buf the array, with room for SentenceGenerator.MAX_SENTENCE_LENGTH bytes at off
+     * @param off where to write the sentence
+     * @return the end of the sentence in buf, or -1 if there are no more sentences
+     */
+    public int next(byte[] buf, int off)
+    {
+        if (producer == null)
+        {
+            return next_index < end_index ? generator.sentence(next_index++, buf, off) : -1;
+        }
+        int length = nextSentence();
+        if (length < 0)
+        {
+            return -1;
+        }
+        System.arraycopy(scratch, 0, buf, off, length);
+        return off + length;
+    }
+
+    /**
+     * This method writes the next sentence into a char array.
+     * @param buf the array, with room for SentenceGenerator.MAX_SENTENCE_LENGTH chars at off
+     * @param off where to write the sentence
+     * @return the end of the sentence in buf, or -1 if there are no more sentences
+     */
+    public int next(char[] buf, int off)
+    {
+        int length = nextSentence();
+        if (length < 0)
+        {
+            return -1;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            buf[off + i] = (char) scratch[i];
+        }
+        return off + length;
+    }
+
+    /**
+     * This method puts the next sentence into a ByteBuffer, if it has room for SentenceGenerator.MAX_SENTENCE_LENGTH bytes.
+     * @param bb the buffer
+     * @return the length of the sentence, 0 if the buffer is too full (no sentence is used up), or -1 if there are no more sentences
+     */
+    public int next(ByteBuffer bb)
+    {
+        if (bb.remaining() < SentenceGenerator.MAX_SENTENCE_LENGTH)
+        {
+            return next_index < end_index ? 0 : -1;
+        }
+        int length = nextSentence();
+        if (length < 0)
+        {
+            return -1;
+        }
+        bb.put(scratch, 0, length);
+        return length;
+    }
+
+    /**
+     * This method hands all remaining sentences to a consumer. With a background producer, the sentences are handed over straight
+     * from its blocks.
+     * @param consumer receives the sentences
+     * @return the number of sentences
+     */
+    public long forEach(SentenceConsumer consumer) throws IOException
+    {
+        long count = 0;
+        if (producer == null)
+        {
+            while (next_index < end_index)
+            {
+                int to = generator.sentence(next_index++, scratch, 0);
+                consumer.sentence(scratch, 0, to);
+                count++;
+            }
+            return count;
+        }
+        while (nextBlock())
+        {
+            while (current.next < current.no_of_sentences)
+            {
+                int from = current.next == 0 ? 0 : current.ends[current.next - 1];
+                int to = current.ends[current.next++];
+                next_index++;
+                consumer.sentence(current.buf, from, to);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return whether there are sentences left
+     */
+    public boolean hasNext()
+    {
+        return next_index < end_index;
+    }
+
+    /**
+     * This method stops the background producer, if there is one.
+     */
+    public synchronized void close()
+    {
+        if (producer != null)
+        {
+            producer.interrupt();
+        }
+    }
+}
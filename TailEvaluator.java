@@ -0,0 +1,282 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Properties;
+/**
+ * A class that keeps the accuracy of a generation file up to date while the sampler appends to it, without reading it again from
+ * the start. After every evaluation, a small checkpoint file (by default the name of the file + ".checkpoint") keeps
+ *
+ *  the offset after the last complete line that has been judged, and the size of the file at that time,
+ *  fingerprints of the first bytes of the file and of the last bytes before the offset,
+ *  the counts of tested generations, generations with correct word order and correct generations.
+ *
+ * The next evaluation only judges the complete lines that have been appended since (a line that is still being written is left for
+ * later), so its cost depends on the new output, not on the size of the file. If the file is shorter than at the last evaluation
+ * (truncated, even if it has grown past the offset again), or one of the fingerprints has changed (the file was rotated or rewritten), the file is evaluated again from the start.
+ * The checkpoint is replaced atomically, so an interrupted evaluation leaves the previous one intact.
+ *
+ * New lines are judged like in the file evaluators, in parallel chunks if there are many. Gzip-compressed files cannot be followed.
+ *
+ * Usage: java TailEvaluator [--checkpoint file] [--threads n] [--follow seconds] generation-file
+ *
+ * @author Tisha Anders
+ */
+public class TailEvaluator
+{
+    // the number of bytes at the start of the file and before the offset that are fingerprinted
+    static final int FINGERPRINT_SIZE = 4096;
+
+    /**
+     * The state of the evaluation of a file, as kept in its checkpoint.
+     */
+    public static class Checkpoint
+    {
+        public final FileScorer.Tally tally = new FileScorer.Tally();
+        public long offset;
+        public long size;
+        public long head_fingerprint;
+        public long tail_fingerprint;
+        // the outcome of the last evaluation; not kept in the checkpoint file
+        public long no_of_new_lines;
+        public boolean restarted;
+
+        /**
+         * @return the number of generations with bad agreement but correct word order
+         */
+        public long badAgreement()
+        {
+            return tally.no_of_good_order_gens - tally.no_of_good_gens;
+        }
+
+        /**
+         * @return the number of generations with bad word order
+         */
+        public long badWordOrder()
+        {
+            return tally.no_of_tested_gens - tally.no_of_good_order_gens;
+        }
+
+        public String toString()
+        {
+            return String.format(Locale.ROOT, "%d generations (%d new%s), word order %.2f%%, word order & agreement %.2f%%, bad agreement %d, bad word order %d",
+                    tally.no_of_tested_gens, no_of_new_lines, restarted ? ", evaluated from the start" : "",
+                    tally.wordOrderPercentage(), tally.percentage(), badAgreement(), badWordOrder());
+        }
+
+        void save(File file) throws IOException
+        {
+            Properties properties = new Properties();
+            properties.setProperty("offset", Long.toString(offset));
+            properties.setProperty("size", Long.toString(size));
+            properties.setProperty("head_fingerprint", Long.toHexString(head_fingerprint));
+            properties.setProperty("tail_fingerprint", Long.toHexString(tail_fingerprint));
+            properties.setProperty("tested", Long.toString(tally.no_of_tested_gens));
+            properties.setProperty("good_order", Long.toString(tally.no_of_good_order_gens));
+            properties.setProperty("good", Long.toString(tally.no_of_good_gens));
+            File temporary = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temporary))
+            {
+                properties.store(out, "TailEvaluator checkpoint");
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * This method reads a checkpoint file.
+         * @return the checkpoint, or null if the file does not exist or is damaged
+         */
+        static Checkpoint load(File file) throws IOException
+        {
+            if (!file.exists())
+            {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file))
+            {
+                properties.load(in);
+            }
+            try
+            {
+                Checkpoint checkpoint = new Checkpoint();
+                checkpoint.offset = Long.parseLong(properties.getProperty("offset"));
+                checkpoint.size = Long.parseLong(properties.getProperty("size"));
+                checkpoint.head_fingerprint = Long.parseUnsignedLong(properties.getProperty("head_fingerprint"), 16);
+                checkpoint.tail_fingerprint = Long.parseUnsignedLong(properties.getProperty("tail_fingerprint"), 16);
+                checkpoint.tally.no_of_tested_gens = Long.parseLong(properties.getProperty("tested"));
+                checkpoint.tally.no_of_good_order_gens = Long.parseLong(properties.getProperty("good_order"));
+                checkpoint.tally.no_of_good_gens = Long.parseLong(properties.getProperty("good"));
+                return checkpoint.offset >= 0 ? checkpoint : null;
+            }
+            catch (NumberFormatException e) // also thrown for a missing property
+            {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * This method fingerprints the bytes between two positions of a file: FNV-1a over all bytes, followed by the finaliser of SplitMix64.
+     */
+    static long fingerprint(FileChannel channel, long from, long to) throws IOException
+    {
+        ByteBuffer bb = ByteBuffer.allocate((int) (to - from));
+        while (bb.hasRemaining())
+        {
+            if (channel.read(bb, from + bb.position()) < 0)
+            {
+                break;
+            }
+        }
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < bb.position(); i++)
+        {
+            h = (h ^ (bb.get(i) & 0xFF)) * 0x100000001B3L;
+        }
+        return SentenceGenerator.mix(h);
+    }
+
+    /**
+     * This method finds the end of the last complete line between two positions of a file.
+     * @return the position after the last newline, or from if there is none
+     */
+    static long lastLineEnd(FileChannel channel, long from, long to) throws IOException
+    {
+        ByteBuffer bb = ByteBuffer.allocate(1 << 16);
+        long end = to;
+        while (end > from)
+        {
+            int n = (int) Math.min(bb.capacity(), end - from);
+            bb.clear();
+            bb.limit(n);
+            while (bb.hasRemaining())
+            {
+                if (channel.read(bb, end - n + bb.position()) < 0)
+                {
+                    throw new IOException("the file ended unexpectedly");
+                }
+            }
+            for (int i = n - 1; i >= 0; i--)
+            {
+                if (bb.get(i) == '\n')
+                {
+                    return end - n + i + 1;
+                }
+            }
+            end -= n;
+        }
+        return from;
+    }
+
+    /**
+     * This method evaluates the lines appended to a file since its last evaluation, and updates the checkpoint.
+     * @param file the generation file
+     * @param checkpoint_file the checkpoint; it is created if it does not exist
+     * @param no_of_threads the number of threads to use for many new lines
+     * @return the counts of all complete lines of the file, and the number of new lines
+     */
+    public static Checkpoint evaluate(File file, File checkpoint_file, int no_of_threads) throws IOException
+    {
+        if (GzipPipe.isGzip(file))
+        {
+            throw new IOException("cannot follow the gzip-compressed file " + file);
+        }
+        Checkpoint checkpoint = Checkpoint.load(checkpoint_file);
+        boolean restarted = checkpoint_file.exists();
+        try (FileChannel channel = FileScorer.open(file))
+        {
+            long size = channel.size();
+            if (checkpoint != null)
+            {
+                long offset = checkpoint.offset;
+                boolean same = offset <= size && checkpoint.size <= size
+                    && fingerprint(channel, 0, Math.min(offset, FINGERPRINT_SIZE)) == checkpoint.head_fingerprint
+                    && fingerprint(channel, Math.max(offset - FINGERPRINT_SIZE, 0), offset) == checkpoint.tail_fingerprint;
+                restarted = !same;
+            }
+            if (checkpoint == null || restarted)
+            {
+                checkpoint = new Checkpoint();
+            }
+            checkpoint.restarted = restarted;
+            long end = lastLineEnd(channel, checkpoint.offset, size);
+            checkpoint.no_of_new_lines = 0;
+            if (end > checkpoint.offset)
+            {
+                FileScorer.Tally tally = FileScorer.tallyRange(channel, checkpoint.offset, end, no_of_threads);
+                checkpoint.tally.add(tally);
+                checkpoint.no_of_new_lines = tally.no_of_tested_gens;
+            }
+            checkpoint.offset = end;
+            checkpoint.size = size;
+            checkpoint.head_fingerprint = fingerprint(channel, 0, Math.min(end, FINGERPRINT_SIZE));
+            checkpoint.tail_fingerprint = fingerprint(channel, Math.max(end - FINGERPRINT_SIZE, 0), end);
+        }
+        checkpoint.save(checkpoint_file);
+        return checkpoint;
+    }
+
+    /**
+     * This method evaluates the new lines of a file, with its checkpoint next to it.
+     */
+    public static Checkpoint evaluate(File file) throws IOException
+    {
+        return evaluate(file, new File(file.getPath() + ".checkpoint"), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * This method evaluates the new lines of the file given on the command line once, or again and again while it grows.
+     * @param args [--checkpoint file] [--threads n] [--follow seconds] generation-file
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        String checkpoint = null;
+        int no_of_threads = Runtime.getRuntime().availableProcessors();
+        double follow = 0;
+        int i = 0;
+        while (i + 1 < args.length && args[i].startsWith("--"))
+        {
+            if (args[i].equals("--checkpoint"))
+            {
+                checkpoint = args[i + 1];
+            }
+            else if (args[i].equals("--threads"))
+            {
+                no_of_threads = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("--follow"))
+            {
+                follow = Double.parseDouble(args[i + 1]);
+            }
+            i += 2;
+        }
+        if (args.length - i != 1)
+        {
+            System.err.println("usage: java TailEvaluator [--checkpoint file] [--threads n] [--follow seconds] generation-file");
+            return;
+        }
+        File file = new File(args[i]);
+        File checkpoint_file = new File(checkpoint != null ? checkpoint : file.getPath() + ".checkpoint");
+        while (true)
+        {
+            Checkpoint result = evaluate(file, checkpoint_file, no_of_threads);
+            if (follow <= 0 || result.no_of_new_lines > 0 || result.restarted)
+            {
+                System.out.println(result);
+            }
+            if (follow <= 0)
+            {
+                return;
+            }
+            Thread.sleep((long) (follow * 1000));
+        }
+    }
+}
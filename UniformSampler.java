@@ -0,0 +1,253 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Random;
+/**
+ * A class that counts the grammatical sentences (word order & agreement) of every exact length and number of relative clauses, and draws
+ * sentences uniformly at random from any such bucket, without rejection.
+ * ExampleBuilder draws every length independently, so the lengths of its sentences are concentrated around a few values.
+ * Length-bucketed training and test sets can be drawn from here instead.
+ *
+ * The counts are computed once by dynamic programming over the BNFAutomaton: for every state and remaining length, the number of ways
+ * to finish a grammatical sentence. Agreement leaves exactly one choice for the ending of a relative pronoun or verb, so those tokens
+ * are counted once. A sentence is sampled by walking through the automaton and choosing every token with probability proportional to
+ * the number of completions it leaves, i.e. in O(length) steps. Lengths are counted in tokens, without the separators of the dataset format.
+ *
+ * @author Tisha Anders
+ */
+public class UniformSampler
+{
+    final BNFAutomaton automaton;
+    final int max_length;
+    // completions[k][r][state]: number of grammatical ways to finish a sentence with exactly k clauses in r tokens from state
+    final BigInteger[][][] completions;
+
+    /**
+     * This constructor counts the sentences of the default grammar.
+     * @param max_length the longest sentences to be counted
+     */
+    public UniformSampler(int max_length)
+    {
+        this(Grammar.DEFAULT, max_length);
+    }
+
+    /**
+     * @param grammar the grammar whose sentences are counted
+     * @param max_length the longest sentences to be counted
+     */
+    public UniformSampler(Grammar grammar, int max_length)
+    {
+        this.automaton = grammar.automaton();
+        this.max_length = max_length;
+        completions = new BigInteger[grammar.max_clauses + 1][][];
+        for (int k = 1; k <= automaton.grammar.max_clauses; k++)
+        {
+            completions[k] = table(k, max_length);
+        }
+    }
+
+    /**
+     * This method decides whether a token may follow a state in a sentence with exactly k clauses, by word order alone.
+     */
+    boolean allowed(int state, int sym, int k)
+    {
+        int next = automaton.next[(state << BNFAutomaton.SHIFT) | sym];
+        if (next == BNFAutomaton.DEAD || next == BNFAutomaton.RULE_SEEN)
+        {
+            return false;
+        }
+        int clause = automaton.clause[state];
+        if (sym == BNFAutomaton.C)
+        {
+            return clause < k; // starts clause number clause+1
+        }
+        if (sym == BNFAutomaton.Z)
+        {
+            return clause == k;
+        }
+        return true;
+    }
+
+    /**
+     * This method decides whether a token is the second of two endings of which agreement only allows one. Such tokens are not counted.
+     */
+    boolean agreementAlternative(int state, int sym)
+    {
+        return automaton.constraint[state] != BNFAutomaton.NO_ROLE && (sym == BNFAutomaton.B || sym == BNFAutomaton.T);
+    }
+
+    BigInteger[][] table(int k, int max_length)
+    {
+        int no_of_states = automaton.no_of_states;
+        BigInteger[][] table = new BigInteger[max_length + 1][no_of_states];
+        for (int state = 0; state < no_of_states; state++)
+        {
+            table[0][state] = automaton.verdict[state] == BNFAutomaton.ACCEPT ? BigInteger.ONE : BigInteger.ZERO;
+        }
+        for (int r = 1; r <= max_length; r++)
+        {
+            for (int state = 0; state < no_of_states; state++)
+            {
+                BigInteger sum = BigInteger.ZERO;
+                for (int sym = 0; sym < BNFAutomaton.NO_OF_TOKENS; sym++)
+                {
+                    if (allowed(state, sym, k) && !agreementAlternative(state, sym))
+                    {
+                        sum = sum.add(table[r - 1][automaton.next[(state << BNFAutomaton.SHIFT) | sym]]);
+                    }
+                }
+                table[r][state] = sum;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @param length the number of tokens
+     * @param no_of_clauses the number of relative clauses
+     * @return the number of grammatical sentences of that length with that number of relative clauses
+     */
+    public BigInteger count(int length, int no_of_clauses)
+    {
+        if (no_of_clauses < 1 || no_of_clauses > automaton.grammar.max_clauses || length < 0 || length > max_length)
+        {
+            return BigInteger.ZERO;
+        }
+        return completions[no_of_clauses][length][BNFAutomaton.START];
+    }
+
+    /**
+     * @param length the number of tokens
+     * @return the number of grammatical sentences of that length
+     */
+    public BigInteger count(int length)
+    {
+        BigInteger sum = BigInteger.ZERO;
+        for (int k = 1; k <= automaton.grammar.max_clauses; k++)
+        {
+            sum = sum.add(count(length, k));
+        }
+        return sum;
+    }
+
+    /**
+     * This method draws a sentence uniformly from all grammatical sentences of a given length and number of relative clauses.
+     * @param length the number of tokens
+     * @param no_of_clauses the number of relative clauses
+     * @param rand the source of randomness
+     * @param buf the buffer, with room for length bytes at pos
+     * @param pos where to write the sentence
+     * @return the end of the sentence in buf
+     */
+    public int sample(int length, int no_of_clauses, Random rand, byte[] buf, int pos)
+    {
+        BigInteger total = count(length, no_of_clauses);
+        if (total.signum() == 0)
+        {
+            throw new IllegalArgumentException("there are no sentences of length " + length + " with " + no_of_clauses + " clauses");
+        }
+        BigInteger[][] table = completions[no_of_clauses];
+        BigInteger x;
+        do
+        {
+            x = new BigInteger(total.bitLength(), rand);
+        }
+        while (x.compareTo(total) >= 0);
+
+        int state = BNFAutomaton.START;
+        int noun_a = 0;
+        int noun_s = 0;
+        int subject_s = 0;
+        for (int r = length; r > 0; r--)
+        {
+            int chosen = -1;
+            for (int sym = 0; sym < BNFAutomaton.NO_OF_TOKENS && chosen < 0; sym++)
+            {
+                if (!allowed(state, sym, no_of_clauses) || agreementAlternative(state, sym))
+                {
+                    continue;
+                }
+                int token = sym;
+                if (automaton.constraint[state] != BNFAutomaton.NO_ROLE && (sym == BNFAutomaton.A || sym == BNFAutomaton.S))
+                {
+                    // the one ending that agrees
+                    switch (automaton.constraint[state])
+                    {
+                        case BNFAutomaton.PRONOUN_ANIMACY: token = noun_a; break;
+                        case BNFAutomaton.VERB_NUMBER: token = noun_s; break;
+                        default: token = subject_s; break;
+                    }
+                }
+                BigInteger c = table[r - 1][automaton.next[(state << BNFAutomaton.SHIFT) | token]];
+                if (x.compareTo(c) < 0)
+                {
+                    chosen = token;
+                }
+                else
+                {
+                    x = x.subtract(c);
+                }
+            }
+            state = automaton.next[(state << BNFAutomaton.SHIFT) | chosen];
+            switch (automaton.role[state])
+            {
+                case BNFAutomaton.NOUN_ANIMACY: noun_a = chosen; break;
+                case BNFAutomaton.NOUN_NUMBER: noun_s = chosen; break;
+                case BNFAutomaton.SUBJECT_NUMBER: noun_s = chosen; subject_s = chosen; break;
+                default: break;
+            }
+            buf[pos++] = (byte) BNFAutomaton.TOKENS.charAt(chosen);
+        }
+        return pos;
+    }
+
+    /**
+     * This method draws a sentence uniformly from all grammatical sentences of a given length and number of relative clauses.
+     * @param length the number of tokens
+     * @param no_of_clauses the number of relative clauses
+     * @param rand the source of randomness
+     * @return the sentence
+     */
+    public String sample(int length, int no_of_clauses, Random rand)
+    {
+        byte[] buf = new byte[length];
+        sample(length, no_of_clauses, rand, buf, 0);
+        return new String(buf, java.nio.charset.StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * This method writes m sentences, drawn uniformly from one bucket, to a .txt file in the format of ExampleBuilder
+     * (intro + space + tab + rel_clauses + outro + space).
+     * @param file_name the file we want to write to, excluding .txt
+     * @param m the number of sentences we want to generate
+     * @param length the number of tokens of every sentence
+     * @param no_of_clauses the number of relative clauses of every sentence
+     * @param seed the seed of the random choices
+     */
+    public void toFile(String file_name, long m, int length, int no_of_clauses, long seed) throws IOException
+    {
+        Random rand = new Random(seed);
+        byte[] separator = System.lineSeparator().getBytes("US-ASCII");
+        byte[] buf = new byte[length];
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file_name + ".txt"), 1 << 16))
+        {
+            for (long i = 0; i < m; i++)
+            {
+                sample(length, no_of_clauses, rand, buf, 0);
+                int first_comma = 0;
+                while (buf[first_comma] != 'C')
+                {
+                    first_comma++;
+                }
+                out.write(buf, 0, first_comma);
+                out.write(' ');
+                out.write('\t');
+                out.write(buf, first_comma, length - first_comma);
+                out.write(' ');
+                out.write(separator);
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+/**
+ * A class that remembers the judgements of lines that have been judged before, for generation dumps in which the same sentences
+ * come up again and again (e.g. sampled at a low temperature). A line is looked up by a 64-bit fingerprint of its bytes, so a
+ * repeated line is not parsed again, whichever path (BNFAutomaton or the reference parsers) it would take.
+ *
+ * The cache is a table of longs with a fixed number of slots (the size cap rounded up to a power of two), in buckets of BUCKET_SIZE
+ * neighbouring slots. Every slot holds the fingerprint of a line, with its judgement in the two lowest bits, so a slot is read and
+ * written in one piece and the cache can be shared by the threads of a parallel run without locks. A line can only be kept in the
+ * bucket its fingerprint points to; when that bucket is full, one of its lines is evicted by the CLOCK algorithm: the hand of the
+ * bucket passes over the lines that have been used since it last passed them (clearing their mark), and evicts the first one that
+ * has not. Two different lines get the same fingerprint with a probability of about 2^-62 per pair.
+ *
+ * The number of hits, misses and evictions is counted, to see whether the cache pays off: for lines of word tokens only, the
+ * automaton is about as fast as the lookup, so the cache is worth it for lines that take the slow path and for highly repetitive files.
+ * For the shared cache, they are shown in the scoring Metrics and printed to System.err at the end of the run.
+ *
+ * The file evaluators (through FileScorer.judgeLine) and the ScoringServer use a shared cache if one is switched on with
+ * -Dverdict.cache=n (the size cap in lines; about 9 bytes per line). A cap below BUCKET_SIZE is raised to BUCKET_SIZE.
+ *
+ * @author Tisha Anders
+ */
+public class VerdictCache
+{
+    static final int BUCKET_SIZE = 8;
+    static final long EMPTY = 0;
+    static final long VERDICT_MASK = 3;
+
+    // the cache of the file evaluators, null unless -Dverdict.cache is set
+    public static final VerdictCache SHARED = shared(Long.getLong("verdict.cache", 0));
+
+    final AtomicLongArray slots;
+    // the CLOCK marks of the slots and the hands of the buckets; races only make the eviction a little less exact
+    final byte[] used;
+    final byte[] hands;
+    final int mask;
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param max_size the size cap: the number of lines to keep, at least BUCKET_SIZE; it is rounded up to a power of two (at most 2^30)
+     */
+    public VerdictCache(long max_size)
+    {
+        if (max_size < BUCKET_SIZE)
+        {
+            throw new IllegalArgumentException("a cache must hold at least " + BUCKET_SIZE + " lines: " + max_size);
+        }
+        int capacity = (int) Long.highestOneBit(Math.min(max_size, 1 << 30) * 2 - 1);
+        slots = new AtomicLongArray(capacity);
+        used = new byte[capacity];
+        hands = new byte[capacity / BUCKET_SIZE];
+        mask = capacity - 1;
+    }
+
+    /**
+     * This method makes the shared cache of the file evaluators, which prints its counts to System.err when the JVM exits.
+     * It must not throw, since it runs when FileScorer is loaded.
+     * @param max_size the value of -Dverdict.cache
+     * @return the cache, or null if max_size is not positive
+     */
+    static VerdictCache shared(long max_size)
+    {
+        if (max_size <= 0)
+        {
+            return null;
+        }
+        if (max_size < BUCKET_SIZE)
+        {
+            System.err.println("verdict cache: -Dverdict.cache=" + max_size + " is raised to " + BUCKET_SIZE + " lines");
+        }
+        final VerdictCache cache = new VerdictCache(Math.max(max_size, BUCKET_SIZE));
+        // the hit rate of the run, e.g. of a file evaluator or the ScoringServer, whether or not metrics are switched on
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (cache.hits() + cache.misses() > 0)
+                {
+                    System.err.println(cache);
+                }
+            }, "verdict-cache-report"));
+        return cache;
+    }
+
+    /**
+     * This method fingerprints all bytes of a line, eight at a time, followed by the finaliser of SplitMix64.
+     */
+    public static long fingerprint(byte[] buf, int from, int to)
+    {
+        long h = SentenceGenerator.GOLDEN_GAMMA * (to - from + 1);
+        int i = from;
+        for (; i + 8 <= to; i += 8)
+        {
+            long w = (buf[i] & 0xFFL) | (buf[i + 1] & 0xFFL) << 8 | (buf[i + 2] & 0xFFL) << 16 | (buf[i + 3] & 0xFFL) << 24
+                | (buf[i + 4] & 0xFFL) << 32 | (buf[i + 5] & 0xFFL) << 40 | (buf[i + 6] & 0xFFL) << 48 | (buf[i + 7] & 0xFFL) << 56;
+            h = Long.rotateLeft(h ^ (w * 0x87C37B91114253D5L), 31) * 0x4CF5AD432745937FL;
+        }
+        long w = 0;
+        for (int shift = 0; i < to; i++, shift += 8)
+        {
+            w |= (buf[i] & 0xFFL) << shift;
+        }
+        h = Long.rotateLeft(h ^ (w * 0x87C37B91114253D5L), 31) * 0x4CF5AD432745937FL;
+        return SentenceGenerator.mix(h);
+    }
+
+    /**
+     * @return the fingerprint without its two lowest bits, never EMPTY
+     */
+    static long key(long fingerprint)
+    {
+        long key = fingerprint & ~VERDICT_MASK;
+        return key == EMPTY ? VERDICT_MASK + 1 : key;
+    }
+
+    /**
+     * This method looks up the judgement of a line.
+     * @param fingerprint the fingerprint of the line
+     * @return its judgement, or BNFAutomaton.UNDECIDED if it is not in the cache
+     */
+    public int get(long fingerprint)
+    {
+        long key = key(fingerprint);
+        int bucket = (int) (fingerprint >>> 32) & mask & -BUCKET_SIZE;
+        for (int i = bucket; i < bucket + BUCKET_SIZE; i++)
+        {
+            long slot = slots.get(i);
+            if ((slot & ~VERDICT_MASK) == key)
+            {
+                used[i] = 1;
+                hits.increment();
+                return (int) (slot & VERDICT_MASK);
+            }
+            if (slot == EMPTY)
+            {
+                break;
+            }
+        }
+        misses.increment();
+        return BNFAutomaton.UNDECIDED;
+    }
+
+    /**
+     * This method keeps the judgement of a line, evicting another line of its bucket if the bucket is full.
+     * @param fingerprint the fingerprint of the line
+     * @param judgement BNFAutomaton.GOOD, BAD_AGREEMENT or BAD_WORD_ORDER
+     */
+    public void put(long fingerprint, int judgement)
+    {
+        long entry = key(fingerprint) | judgement;
+        int bucket = (int) (fingerprint >>> 32) & mask & -BUCKET_SIZE;
+        for (int i = bucket; i < bucket + BUCKET_SIZE; i++)
+        {
+            if (slots.get(i) == EMPTY)
+            {
+                if (slots.compareAndSet(i, EMPTY, entry))
+                {
+                    return;
+                }
+            }
+        }
+        // CLOCK: after one round every mark is cleared, so a line is evicted within two rounds
+        int b = bucket / BUCKET_SIZE;
+        for (int step = 0; step < 2 * BUCKET_SIZE; step++)
+        {
+            int hand = hands[b] & (BUCKET_SIZE - 1);
+            hands[b] = (byte) (hand + 1);
+            int i = bucket + hand;
+            if (used[i] == 0 || step == 2 * BUCKET_SIZE - 1)
+            {
+                slots.set(i, entry);
+                evictions.increment();
+                return;
+            }
+            used[i] = 0;
+        }
+    }
+
+    /**
+     * This method judges a line (word order & agreement), from the cache if it has been judged before.
+     * @param buf the buffer holding the line, without the character the file evaluators crop
+     * @param from index of the first byte
+     * @param to index after the last byte
+     * @return BNFAutomaton.GOOD, BAD_AGREEMENT or BAD_WORD_ORDER
+     */
+    public int judge(byte[] buf, int from, int to)
+    {
+        long fingerprint = fingerprint(buf, from, to);
+        int judgement = get(fingerprint);
+        if (judgement == BNFAutomaton.UNDECIDED)
+        {
+            judgement = FileScorer.judge(buf, from, to);
+            put(fingerprint, judgement);
+        }
+        return judgement;
+    }
+
+    /**
+     * @return the number of lines found in the cache
+     */
+    public long hits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lines that were not in the cache
+     */
+    public long misses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of lines evicted to make room for others
+     */
+    public long evictions()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of slots, the most lines the cache can hold
+     */
+    public int capacity()
+    {
+        return slots.length();
+    }
+
+    /**
+     * @return percentage of lookups that were found in the cache
+     */
+    public double hitRate()
+    {
+        long hits = hits();
+        return hits * Math.pow(hits + misses(), -1) * 100;
+    }
+
+    public String toString()
+    {
+        return String.format(Locale.ROOT, "verdict cache: %d slots, %d hits, %d misses, %d evictions, hit rate %.2f%%",
+                capacity(), hits(), misses(), evictions(), hitRate());
+    }
+}
@@ -0,0 +1,324 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+/**
+ * A class that stores the judgement of every line of a generation file compactly: one bit per line (set if the line is bad) and the
+ * byte offset at which the line starts in the file. The lines themselves are not kept; bad lines are read back from the file when
+ * they are needed. This keeps about one bit plus one long per line in memory, even for files with 100 million lines.
+ * The offsets can be kept off the heap, in direct buffers of SEGMENT_SIZE longs (2^24, i.e. 128 MB) each, so the store is not limited
+ * by the 2 GB of a single buffer and grows without copying once the first segment is full.
+ * A gzip-compressed file cannot be read at an offset; its bad lines are read back by decompressing it once more.
+ *
+ * @author Tisha Anders
+ */
+public class VerdictStore
+{
+    static final int INITIAL_CAPACITY = 1024;
+    static final int SEGMENT_SHIFT = 24;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    // the heap store keeps the offsets in one array
+    static final long MAX_HEAP_CAPACITY = Integer.MAX_VALUE - 8;
+
+    final File source;
+    final boolean off_heap;
+    final FileScorer.Tally tally = new FileScorer.Tally();
+    long[] bad_bits = new long[INITIAL_CAPACITY / 64];
+    long[] offsets;
+    // the off-heap store: one segment of up to SEGMENT_SIZE longs, then more segments of SEGMENT_SIZE longs
+    LongBuffer[] direct_offsets;
+    long no_of_lines = 0;
+
+    VerdictStore(File source, boolean off_heap)
+    {
+        this.source = source;
+        this.off_heap = off_heap;
+        if (off_heap)
+        {
+            direct_offsets = new LongBuffer[] {ByteBuffer.allocateDirect(INITIAL_CAPACITY * 8).asLongBuffer()};
+        }
+        else
+        {
+            offsets = new long[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * This method judges every line of a file (word order & agreement) and stores the judgements.
+     * @param file the file to be examined
+     * @param off_heap whether to keep the line offsets in a direct buffer
+     * @return the judgements
+     */
+    public static VerdictStore judge(File file, boolean off_heap) throws IOException
+    {
+        final VerdictStore store = new VerdictStore(file, off_heap);
+        FileScorer.forEachLine(file, Metrics.SCORING, (buf, from, to, offset) -> {
+                int judgement = FileScorer.judgeLine(buf, from, to, Metrics.SCORING);
+                store.tally.add(judgement);
+                store.add(offset, judgement != BNFAutomaton.GOOD);
+            });
+        return store;
+    }
+
+    void add(long offset, boolean bad)
+    {
+        long line_no = no_of_lines;
+        if (line_no >= capacity())
+        {
+            grow();
+        }
+        if (off_heap)
+        {
+            direct_offsets[(int) (line_no >>> SEGMENT_SHIFT)].put((int) line_no & (SEGMENT_SIZE - 1), offset);
+        }
+        else
+        {
+            offsets[(int) line_no] = offset;
+        }
+        if (bad)
+        {
+            bad_bits[(int) (line_no >>> 6)] |= 1L << line_no;
+        }
+        no_of_lines++;
+    }
+
+    long capacity()
+    {
+        if (off_heap)
+        {
+            return direct_offsets.length == 1 ? direct_offsets[0].capacity() : (long) direct_offsets.length << SEGMENT_SHIFT;
+        }
+        return offsets.length;
+    }
+
+    void grow()
+    {
+        long capacity;
+        if (off_heap)
+        {
+            if (capacity() < SEGMENT_SIZE)
+            {
+                // the first segment doubles until it is full
+                capacity = capacity() * 2;
+                LongBuffer bigger = ByteBuffer.allocateDirect((int) capacity * 8).asLongBuffer();
+                LongBuffer old = direct_offsets[0];
+                old.position(0);
+                old.limit((int) no_of_lines);
+                bigger.put(old);
+                bigger.position(0);
+                direct_offsets[0] = bigger;
+            }
+            else
+            {
+                if (capacity() + SEGMENT_SIZE > MAX_HEAP_CAPACITY * 64) // the bits of the lines are still kept in one array
+                {
+                    throw new IllegalStateException("too many lines: " + no_of_lines);
+                }
+                direct_offsets = java.util.Arrays.copyOf(direct_offsets, direct_offsets.length + 1);
+                direct_offsets[direct_offsets.length - 1] = ByteBuffer.allocateDirect(SEGMENT_SIZE * 8).asLongBuffer();
+                capacity = capacity();
+            }
+        }
+        else
+        {
+            capacity = Math.min(MAX_HEAP_CAPACITY, capacity() * 2);
+            if (capacity <= no_of_lines)
+            {
+                throw new IllegalStateException("too many lines for the heap store, use the off-heap store: " + no_of_lines);
+            }
+            offsets = java.util.Arrays.copyOf(offsets, (int) capacity);
+        }
+        bad_bits = java.util.Arrays.copyOf(bad_bits, (int) ((capacity + 63) / 64));
+    }
+
+    /**
+     * @return the number of lines
+     */
+    public long size()
+    {
+        return no_of_lines;
+    }
+
+    /**
+     * @return the counts of tested, well-ordered and correct generations
+     */
+    public FileScorer.Tally tally()
+    {
+        return tally;
+    }
+
+    /**
+     * @param line_no the number of a line, counting from 0
+     * @return whether the line is bad
+     */
+    public boolean isBad(long line_no)
+    {
+        return (bad_bits[(int) (line_no >>> 6)] & (1L << line_no)) != 0;
+    }
+
+    /**
+     * @param line_no the number of a line, counting from 0
+     * @return the position of the line in the file
+     */
+    public long offset(long line_no)
+    {
+        return off_heap ? direct_offsets[(int) (line_no >>> SEGMENT_SHIFT)].get((int) line_no & (SEGMENT_SIZE - 1)) : offsets[(int) line_no];
+    }
+
+    /**
+     * This method counts the bad lines in a range of lines.
+     * @param from the number of the first line
+     * @param to the number after the last line
+     * @return the number of bad lines
+     */
+    public long countBad(long from, long to)
+    {
+        if (from >= to)
+        {
+            return 0;
+        }
+        int first_word = (int) (from >>> 6);
+        int last_word = (int) ((to - 1) >>> 6);
+        long first_mask = -1L << from;
+        long last_mask = -1L >>> (63 - ((to - 1) & 63));
+        if (first_word == last_word)
+        {
+            return Long.bitCount(bad_bits[first_word] & first_mask & last_mask);
+        }
+        long count = Long.bitCount(bad_bits[first_word] & first_mask);
+        for (int w = first_word + 1; w < last_word; w++)
+        {
+            count += Long.bitCount(bad_bits[w]);
+        }
+        return count + Long.bitCount(bad_bits[last_word] & last_mask);
+    }
+
+    /**
+     * This method counts the good lines in a range of lines.
+     * @param from the number of the first line
+     * @param to the number after the last line
+     * @return the number of good lines
+     */
+    public long countGood(long from, long to)
+    {
+        return Math.max(0, to - from) - countBad(from, to);
+    }
+
+    /**
+     * This method finds the next bad line.
+     * @param from the number of the line to start from
+     * @return the number of the first bad line at or after from, or -1 if there is none
+     */
+    public long nextBad(long from)
+    {
+        if (from >= no_of_lines)
+        {
+            return -1;
+        }
+        int w = (int) (from >>> 6);
+        long word = bad_bits[w] & (-1L << from);
+        while (word == 0)
+        {
+            if (++w >= bad_bits.length)
+            {
+                return -1;
+            }
+            word = bad_bits[w];
+        }
+        long line_no = ((long) w << 6) + Long.numberOfTrailingZeros(word);
+        return line_no < no_of_lines ? line_no : -1;
+    }
+
+    /**
+     * This method reads the bad lines back from the file, one at a time and in file order.
+     * @param consumer receives the bad lines, without line terminators
+     * @return the number of bad lines
+     */
+    public long forEachBadLine(final FileScorer.LineConsumer consumer) throws IOException
+    {
+        if (GzipPipe.isGzip(source))
+        {
+            final long[] line_no = {0};
+            final long[] count = {0};
+            FileScorer.forEachLine(source, (buf, from, to, offset) -> {
+                    if (line_no[0] < no_of_lines && isBad(line_no[0]))
+                    {
+                        consumer.line(buf, from, to, offset);
+                        count[0]++;
+                    }
+                    line_no[0]++;
+                });
+            return count[0];
+        }
+        long count = 0;
+        try (FileChannel channel = FileScorer.open(source))
+        {
+            long size = channel.size();
+            byte[] buf = new byte[1 << 16];
+            long window = 0; // position of buf[0] in the file
+            int filled = 0;
+            for (long line_no = nextBad(0); line_no >= 0; line_no = nextBad(line_no + 1))
+            {
+                long offset = offset(line_no);
+                if (offset < window || offset >= window + filled)
+                {
+                    window = offset;
+                    filled = 0;
+                }
+                int start;
+                int end;
+                while (true)
+                {
+                    start = (int) (offset - window);
+                    end = start;
+                    while (end < filled && buf[end] != '\n')
+                    {
+                        end++;
+                    }
+                    if (end < filled || window + filled >= size)
+                    {
+                        break;
+                    }
+                    // the line goes on behind the window: move the window to the line and read more
+                    System.arraycopy(buf, start, buf, 0, filled - start);
+                    filled -= start;
+                    window = offset;
+                    if (filled == buf.length)
+                    {
+                        buf = java.util.Arrays.copyOf(buf, buf.length * 2);
+                    }
+                    int n = channel.read(ByteBuffer.wrap(buf, filled, buf.length - filled), window + filled);
+                    if (n < 0)
+                    {
+                        break;
+                    }
+                    filled += n;
+                }
+                consumer.line(buf, start, FileScorer.stripCarriageReturn(buf, start, end), offset);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method copies all bad lines from the file to another file, without decoding them.
+     * @param goal the file to write to
+     * @return the number of bad lines
+     */
+    public long badLinesToFile(File goal) throws IOException
+    {
+        final byte[] separator = System.lineSeparator().getBytes("US-ASCII");
+        try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(goal), 1 << 16))
+        {
+            return forEachBadLine((buf, from, to, offset) -> {
+                    out.write(buf, from, to - from);
+                    out.write(separator);
+                });
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of the file evaluators over the checked-in files, one whole file per operation.
+ * Run the benchmarks from the top of the repository, where the .txt files are.
+ *
+ * @author Tisha Anders
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileEvaluatorBenchmark
+{
+    @Param({"2020-04-11-21-24-40_gen", "dataset"})
+    public String file;
+
+    @Param({"4"})
+    public int threads;
+
+    @Benchmark
+    public double bnfTestFromFile() throws Throwable
+    {
+        return (double) Project.BNF_TEST_FROM_FILE.invokeExact(file);
+    }
+
+    @Benchmark
+    public double testBNFFromFile() throws Throwable
+    {
+        return (double) Project.TEST_BNF_FROM_FILE.invokeExact(file);
+    }
+
+    @Benchmark
+    public double testFromFile() throws Throwable
+    {
+        return (double) Project.TEST_FROM_FILE.invokeExact(file);
+    }
+
+    @Benchmark
+    public double testFromFileParallel() throws Throwable
+    {
+        return (double) Project.TEST_FROM_FILE_PARALLEL.invokeExact(file, threads);
+    }
+
+    @Benchmark
+    public String[][] judgementArray() throws Throwable
+    {
+        return (String[][]) Project.JUDGEMENT_ARRAY.invokeExact(file);
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of sentence generation: single sentences (one per operation) and whole files of m sentences (one file per operation).
+ *
+ * @author Tisha Anders
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark
+{
+    @Param({"10000"})
+    public int m;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    Object generator;
+    byte[] buf = new byte[256];
+    long index;
+    File dir;
+    String file_name;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        generator = (Object) Project.NEW_GENERATOR.invokeExact(42L);
+        dir = Files.createTempDirectory("generator-benchmark").toFile();
+        file_name = new File(dir, "dataset").getPath();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        new File(file_name + ".txt").delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public String sentence() throws Throwable
+    {
+        return (String) Project.SENTENCE.invokeExact();
+    }
+
+    @Benchmark
+    public int generatorSentence() throws Throwable
+    {
+        return (int) Project.GENERATE.invokeExact(generator, index++, buf, 0);
+    }
+
+    @Benchmark
+    public void toFile() throws Throwable
+    {
+        Project.TO_FILE.invokeExact(file_name, m);
+    }
+
+    @Benchmark
+    public void toFileParallel() throws Throwable
+    {
+        Project.TO_FILE_PARALLEL.invokeExact(file_name, (long) m, 42L, threads);
+    }
+}
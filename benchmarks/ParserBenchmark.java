@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the single-sentence parsers on the lines of the checked-in files, one sentence per operation.
+ *
+ * @author Tisha Anders
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark
+{
+    @Param({"2020-04-11-21-24-40_gen", "dataset"})
+    public String file;
+
+    String[] lines;
+    byte[][] bytes;
+    int cursor;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        lines = Project.lines(file);
+        bytes = new byte[lines.length][];
+        for (int i = 0; i < lines.length; i++)
+        {
+            bytes[i] = lines[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    int nextLine()
+    {
+        int i = cursor;
+        cursor = i + 1 == lines.length ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public int bnfParse() throws Throwable
+    {
+        return (int) Project.BNF_PARSE.invokeExact(lines[nextLine()]);
+    }
+
+    @Benchmark
+    public int fastBnfParse() throws Throwable
+    {
+        return (int) Project.FAST_BNF_PARSE.invokeExact((CharSequence) lines[nextLine()]);
+    }
+
+    @Benchmark
+    public int checkAgreement() throws Throwable
+    {
+        return (int) Project.CHECK_AGREEMENT.invokeExact(lines[nextLine()]);
+    }
+
+    @Benchmark
+    public int referenceJudgement() throws Throwable
+    {
+        String line = lines[nextLine()];
+        int bnf_judgement = (int) Project.BNF_PARSE.invokeExact(line);
+        return bnf_judgement == 0 ? 0 : bnf_judgement + (int) Project.CHECK_AGREEMENT.invokeExact(line);
+    }
+
+    @Benchmark
+    public int fastJudgement() throws Throwable
+    {
+        return (int) Project.FAST_JUDGEMENT.invokeExact((CharSequence) lines[nextLine()]);
+    }
+
+    @Benchmark
+    public int judgeBytes() throws Throwable
+    {
+        byte[] line = bytes[nextLine()];
+        return (int) Project.JUDGE_BYTES.invokeExact(line, 0, line.length);
+    }
+}
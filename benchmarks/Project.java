@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * JMH does not accept benchmarks in the default package, but classes in the default package cannot be imported from a named one.
+ * This class looks up the methods under test once, by reflection, as static final method handles, which the JIT inlines like direct calls.
+ * Instances of project classes are passed around as Object.
+ *
+ * @author Tisha Anders
+ */
+final class Project
+{
+    static final MethodHandle BNF_PARSE = find("BNFParser", "BNFparse", String.class);
+    static final MethodHandle FAST_BNF_PARSE = find("BNFParser", "fastBNFparse", CharSequence.class);
+    static final MethodHandle CHECK_AGREEMENT = find("AgreementandBNFParser", "checkAgreement", String.class);
+    static final MethodHandle FAST_JUDGEMENT = find("AgreementandBNFParser", "fastJudgement", CharSequence.class);
+    static final MethodHandle JUDGE_BYTES = find("BNFAutomaton", "judge", byte[].class, int.class, int.class);
+
+    static final MethodHandle SENTENCE = find("ExampleBuilder", "sentence");
+    static final MethodHandle TO_FILE = find("ExampleBuilder", "toFile", String.class, int.class);
+    static final MethodHandle TO_FILE_PARALLEL = find("ExampleBuilder", "toFile", String.class, long.class, long.class, int.class);
+    static final MethodHandle NEW_GENERATOR = construct("SentenceGenerator", long.class);
+    static final MethodHandle GENERATE = find("SentenceGenerator", "sentence", long.class, byte[].class, int.class);
+
+    static final MethodHandle BNF_TEST_FROM_FILE = find("BNFParser", "testFromFile", String.class);
+    static final MethodHandle TEST_BNF_FROM_FILE = find("AgreementandBNFParser", "testBNFFromFile", String.class);
+    static final MethodHandle TEST_FROM_FILE = find("AgreementandBNFParser", "testFromFile", String.class);
+    static final MethodHandle TEST_FROM_FILE_PARALLEL = find("AgreementandBNFParser", "testFromFile", String.class, int.class);
+    static final MethodHandle JUDGEMENT_ARRAY = find("AgreementandBNFParser", "judgementArray", String.class);
+
+    private Project()
+    {
+    }
+
+    /**
+     * This method finds a method of a project class. For instance methods, the receiver is typed as Object.
+     */
+    static MethodHandle find(String class_name, String name, Class<?>... parameters)
+    {
+        try
+        {
+            Method method = Class.forName(class_name).getDeclaredMethod(name, parameters);
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            if (!java.lang.reflect.Modifier.isStatic(method.getModifiers()))
+            {
+                handle = handle.asType(handle.type().changeParameterType(0, Object.class));
+            }
+            return handle;
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * This method finds a constructor of a project class, returning the new instance as Object.
+     */
+    static MethodHandle construct(String class_name, Class<?>... parameters)
+    {
+        try
+        {
+            Constructor<?> constructor = Class.forName(class_name).getDeclaredConstructor(parameters);
+            constructor.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor);
+            return handle.asType(handle.type().changeReturnType(Object.class));
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * This method builds a grammatical sentence with a given number of relative clauses and Ns per noun, with alternating features.
+     */
+    static String syntheticSentence(int no_of_clauses, int noun_length)
+    {
+        StringBuilder noun = new StringBuilder();
+        for (int i = 0; i < noun_length; i++)
+        {
+            noun.append('N');
+        }
+        String[] endings = {"AS", "BT"};
+        StringBuilder s = new StringBuilder("DP").append(noun).append(endings[0]);
+        for (int i = 0; i < no_of_clauses; i++)
+        {
+            String last = endings[i % 2];
+            s.append("CR").append(last.charAt(0)).append("VV").append(last.charAt(1)).append('P').append(noun).append(endings[(i + 1) % 2]);
+        }
+        return s.append("ZVVS").append("DP").append(noun).append("AT").toString();
+    }
+
+    /**
+     * This method reads the lines of a file (excluding .txt) as the parsers see them, i.e. without spaces and tabs.
+     */
+    static String[] lines(String filename) throws java.io.IOException
+    {
+        java.util.List<String> lines = java.nio.file.Files.readAllLines(java.nio.file.Paths.get(filename + ".txt"));
+        String[] result = new String[lines.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = lines.get(i).replace(" ", "").replace("\t", "");
+        }
+        return result;
+    }
+}
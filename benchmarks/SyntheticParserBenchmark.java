@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the parsers on one grammatical sentence, scaled by the number of relative clauses and the length of the nouns.
+ *
+ * @author Tisha Anders
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyntheticParserBenchmark
+{
+    @Param({"1", "2", "4"})
+    public int clauses;
+
+    @Param({"1", "5", "9"})
+    public int noun_length;
+
+    String sentence;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        sentence = Project.syntheticSentence(clauses, noun_length);
+        if ((int) Project.FAST_JUDGEMENT.invokeExact((CharSequence) sentence) != 2)
+        {
+            throw new IllegalStateException("synthetic sentence is not grammatical: " + sentence);
+        }
+    }
+
+    @Benchmark
+    public int bnfParse() throws Throwable
+    {
+        return (int) Project.BNF_PARSE.invokeExact(sentence);
+    }
+
+    @Benchmark
+    public int fastBnfParse() throws Throwable
+    {
+        return (int) Project.FAST_BNF_PARSE.invokeExact((CharSequence) sentence);
+    }
+
+    @Benchmark
+    public int checkAgreement() throws Throwable
+    {
+        return (int) Project.CHECK_AGREEMENT.invokeExact(sentence);
+    }
+
+    @Benchmark
+    public int fastJudgement() throws Throwable
+    {
+        return (int) Project.FAST_JUDGEMENT.invokeExact((CharSequence) sentence);
+    }
+}
@@ -0,0 +1,59 @@
+### Client for ScoringServer.java, so that the sampler can score its generations after every epoch without writing them to a file
+### and without starting a new JVM for every evaluation.
+###
+### Usage (the server is started once, as a child process, from the directory holding the compiled Java classes):
+###     client = ScoringClient()
+###     judgements, word_order_accuracy, accuracy = client.score(decoded_sentences)
+###     client.close()
+### or, with a server already running (java ScoringServer --port 5005):
+###     client = ScoringClient(port=5005)
+
+from __future__ import print_function
+import socket
+import subprocess
+
+
+class ScoringClient(object):
+
+    def __init__(self, port=None, host='127.0.0.1', classpath='.'):
+        self.process = None
+        self.sock = None
+        if port is None: # start the server as a child process talking over stdin/stdout
+            self.process = subprocess.Popen(['java', '-cp', classpath, 'ScoringServer'],
+                                            stdin=subprocess.PIPE, stdout=subprocess.PIPE)
+            self.writer = self.process.stdin
+            self.reader = self.process.stdout
+        else: # connect to a running server
+            self.sock = socket.create_connection((host, port))
+            self.writer = self.sock.makefile('wb')
+            self.reader = self.sock.makefile('rb')
+
+    def score(self, sentences):
+        ## send one batch (the number of sentences, then one sentence per line) and read the answer line
+        ## the sentences are judged like the lines of a generation file, i.e. their last character (the space) is cropped
+        ## returns one judgement per sentence (2 = correct, 1 = only word order correct, 0 = word order incorrect; an empty
+        ## sentence is 0), the percentage of sentences with correct word order and the percentage of correct sentences
+        lines = [s.rstrip('\r\n') for s in sentences]
+        if any('\n' in line for line in lines):
+            raise ValueError('a sentence must not contain a newline')
+        batch = '%d\n' % len(lines) + ''.join(line + '\n' for line in lines)
+        self.writer.write(batch.encode('ascii'))
+        self.writer.flush()
+        answer = self.reader.readline().decode('ascii').split()
+        judgements = [int(j) for j in answer[5]] if len(answer) > 5 else []
+        return judgements, float(answer[3]), float(answer[4])
+
+    def close(self):
+        self.writer.close()
+        if self.process is not None:
+            self.process.wait()
+        if self.sock is not None:
+            self.reader.close()
+            self.sock.close()
+
+
+if __name__ == '__main__':
+    client = ScoringClient()
+    print(client.score(['DDPNNBTCRBVVVVTPPNNNNNNNNNATPCRAVVVVVTNNNNNNNNNASPPCRAVVSNATPPZVVVVTDDDPPNNNNBS ',
+                        'NATCRAVVVVVTPPNNNNNNNNNASPPCRAVVSNNNNNNNNNBSPPCRBVSPNNNNNNNATPPZVVVVVTNNDNNNNNNBS ']))
+    client.close()